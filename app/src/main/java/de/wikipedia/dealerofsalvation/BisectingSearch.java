@@ -0,0 +1,211 @@
+package de.wikipedia.dealerofsalvation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.wikipedia.Wiki.Revision;
+
+import de.wikipedia.dealerofsalvation.MaintenanceBot.NoMaintenanceTemplateFoundException;
+
+/**
+ * Alternative to the linear {@link FirstRevisionSearch}: Starting from the
+ * newest revision, it probes revisions 1, 2, 4, 8, ... further back until one
+ * doesn't contain the template, bisects the range in between and continues
+ * with the linear revert check from the boundary on. If the revert check goes
+ * on behind the boundary, the search starts over from there.
+ *
+ * Content is read only at the probe points and near the boundaries, and only
+ * once per sha1. The result equals the one of the linear walk, unless the
+ * template was removed and added again between two probes without being a
+ * revert (which the linear walk would stop at).
+ */
+class BisectingSearch {
+
+	/**
+	 * Reads revision contents by revid, in the order of the input. Content
+	 * not available is null.
+	 */
+	interface TextSource {
+		List<String> texts(long[] revids) throws IOException;
+	}
+
+	/** Number of revisions read at once by the linear revert check. */
+	private static final int LINEAR_BATCH = 5;
+
+	private final MaintenanceCategory cat;
+
+	private final String title;
+
+	/** newest first */
+	private final List<Revision> history;
+
+	private final TextSource source;
+
+	/** cat.matches() by sha1 and by revid, texts aren't kept */
+	private final Map<String, Boolean> verdictBySha1 = new HashMap<>();
+
+	private final Map<Long, Boolean> verdictByRevid = new HashMap<>();
+
+	/**
+	 * @param history
+	 *            metadata (ids, user, sha1) of the revisions to search, newest
+	 *            first
+	 */
+	BisectingSearch(MaintenanceCategory cat, String title,
+			List<Revision> history, TextSource source) {
+		this.cat = cat;
+		this.title = title;
+		this.history = history;
+		this.source = source;
+	}
+
+	Revision find() throws IOException, NoMaintenanceTemplateFoundException {
+		if (history.isEmpty()) {
+			return null;
+		}
+		if (!matches(0)) {
+			throw new NoMaintenanceTemplateFoundException(cat, title);
+		}
+		int start = 0;
+		while (true) {
+			int boundary = boundary(start);
+			int resumed = revertCheck(boundary);
+			if (resumed < 0) {
+				return history.get(boundary);
+			}
+			start = resumed;
+		}
+	}
+
+	/**
+	 * @param start
+	 *            index of a revision containing the template
+	 * @return index of a revision containing the template whose predecessor
+	 *         doesn't, or the oldest revision
+	 */
+	private int boundary(int start) throws IOException {
+		int last = history.size() - 1;
+		int lo = start;
+		int hi = -1;
+		for (int step = 1; lo < last; step *= 2) {
+			int probe = Math.min(lo + step, last);
+			if (matches(probe)) {
+				lo = probe;
+			} else {
+				hi = probe;
+				break;
+			}
+		}
+		if (hi < 0) {
+			return lo;
+		}
+		while (hi - lo > 1) {
+			int mid = (lo + hi) >>> 1;
+			if (matches(mid)) {
+				lo = mid;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Same revert check as the linear walk, starting at the revision 1 found
+	 * by bisection.
+	 *
+	 * @return index of the older revision to go on from, if the removal of the
+	 *         template turned out to be reverted, or -1 if the boundary is the
+	 *         result
+	 */
+	private int revertCheck(int boundary) throws IOException {
+		Revision revision1 = history.get(boundary);
+		Revision revision2 = null;
+		boolean decided = false;
+		for (int i = boundary + 1, depth = 1; i < history.size(); i++, depth++) {
+			Revision revision = history.get(i);
+			if (FirstRevisionSearch.isSameContent(revision1, revision)) {
+				return i;
+			}
+			if (decided) {
+				if (depth > FirstRevisionSearch.MAX_REVERT_DEPTH) {
+					return -1;
+				}
+				continue;
+			}
+			if (matches(i)) {
+				if (null != revision2) {
+					// not reverted
+					decided = true;
+				} else {
+					return i;
+				}
+			} else if (null == revision2) {
+				// remember this revision for revert check
+				revision2 = revision;
+			} else if (revision.getUser().equals(revision2.getUser())) {
+				// remember another revision for revert check
+				revision2 = revision;
+			} else {
+				decided = true;
+			}
+		}
+		return -1;
+	}
+
+	private boolean matches(int index) throws IOException {
+		Revision revision = history.get(index);
+		Boolean verdict = cached(revision);
+		if (null != verdict) {
+			return verdict;
+		}
+		List<Revision> batch = new ArrayList<>();
+		batch.add(revision);
+		if (isNextToBoundary(index)) {
+			for (int i = index + 1; i < history.size()
+					&& batch.size() < LINEAR_BATCH; i++) {
+				Revision older = history.get(i);
+				if (null == cached(older)) {
+					batch.add(older);
+				}
+			}
+		}
+		long[] revids = new long[batch.size()];
+		for (int i = 0; i < revids.length; i++) {
+			revids[i] = batch.get(i).getID();
+		}
+		List<String> texts = source.texts(revids);
+		for (int i = 0; i < revids.length; i++) {
+			// null for hidden content, which the linear walk sees as ""
+			boolean batchVerdict = cat.matches(Objects.requireNonNullElse(
+					texts.get(i), ""));
+			Revision batchRevision = batch.get(i);
+			verdictByRevid.put(batchRevision.getID(), batchVerdict);
+			if (null != batchRevision.getSha1()) {
+				verdictBySha1.put(batchRevision.getSha1(), batchVerdict);
+			}
+		}
+		return verdictByRevid.get(revision.getID());
+	}
+
+	/**
+	 * Probes are read one by one, but the linear check reads the revisions in
+	 * order, so it reads ahead. A revision is next to a boundary, if its newer
+	 * neighbour has been read.
+	 */
+	private boolean isNextToBoundary(int index) {
+		return index > 0 && null != cached(history.get(index - 1));
+	}
+
+	private Boolean cached(Revision revision) {
+		String sha1 = revision.getSha1();
+		if (null != sha1 && verdictBySha1.containsKey(sha1)) {
+			return verdictBySha1.get(sha1);
+		}
+		return verdictByRevid.get(revision.getID());
+	}
+}
@@ -0,0 +1,148 @@
+package de.wikipedia.dealerofsalvation;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import org.wikipedia.Wiki;
+import org.wikipedia.Wiki.Revision;
+
+/**
+ * Append-only journal of the results of history walks, so that a run which
+ * stopped halfway (IOException, shutdown) doesn't have to walk the same
+ * histories again. Each line holds one resolved walk:
+ *
+ * <pre>
+ * &lt;category&gt;	&lt;title&gt;	&lt;revid&gt;	&lt;timestamp&gt;
+ * </pre>
+ *
+ * The journal is deleted after a complete run, when all results are in the
+ * lists and the {@link EntryStore}.
+ */
+class CheckpointJournal implements AutoCloseable {
+
+	private static final Logger logger = Logger
+			.getLogger(CheckpointJournal.class.getName());
+
+	private final Path file;
+
+	private final Wiki wiki;
+
+	/** category → title → first revision with template */
+	private final Map<String, Map<String, Revision>> resolved = new ConcurrentHashMap<>();
+
+	private BufferedWriter out;
+
+	CheckpointJournal(Path file, Wiki wiki) throws IOException {
+		this.file = file;
+		this.wiki = wiki;
+		read();
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		if (!endsWithNewLine()) {
+			// Don't append to a line cut off by a crash
+			out.newLine();
+		}
+	}
+
+	private boolean endsWithNewLine() throws IOException {
+		try (FileChannel channel = FileChannel.open(file)) {
+			long size = channel.size();
+			if (size == 0) {
+				return true;
+			}
+			ByteBuffer last = ByteBuffer.allocate(1);
+			channel.read(last, size - 1);
+			return last.get(0) == '\n';
+		}
+	}
+
+	private void read() throws IOException {
+		int count = 0;
+		try (BufferedReader in = Files.newBufferedReader(file,
+				StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] tokens = line.split("\t");
+				try {
+					Revision revision = wiki.new Revision(
+							Long.parseLong(tokens[2]),
+							OffsetDateTime.parse(tokens[3]), null);
+					resolved.computeIfAbsent(tokens[0],
+							k -> new ConcurrentHashMap<>()).put(tokens[1],
+							revision);
+					count++;
+				} catch (DateTimeParseException | NumberFormatException
+						| ArrayIndexOutOfBoundsException e) {
+					// typically the last line, if writing it was interrupted
+					logger.warning("parse error in " + file + " at line: "
+							+ line);
+				}
+			}
+		} catch (NoSuchFileException e) {
+			return;
+		}
+		logger.info("Resuming with " + count + " walks from " + file);
+	}
+
+	/**
+	 * @return the revision found by an earlier walk, or null
+	 */
+	Revision get(MaintenanceCategory category, String title) {
+		Map<String, Revision> titles = resolved.get(category.getName());
+		return null == titles ? null : titles.get(title);
+	}
+
+	/**
+	 * Appends the result of a walk. It reaches the file immediately, so that
+	 * it survives even if the JVM is killed.
+	 */
+	synchronized void record(MaintenanceCategory category, String title,
+			Revision revision) {
+		if (null == out) {
+			return;
+		}
+		try {
+			out.write(category.getName() + "\t" + title + "\t"
+					+ revision.getID() + "\t" + revision.getTimestamp());
+			out.newLine();
+			out.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Flushes and closes the journal. Called from the shutdown hook, too.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (null != out) {
+			out.close();
+			out = null;
+		}
+	}
+
+	/**
+	 * Closes and removes the journal after a complete run.
+	 */
+	synchronized void delete() throws IOException {
+		close();
+		Files.deleteIfExists(file);
+		resolved.clear();
+	}
+}
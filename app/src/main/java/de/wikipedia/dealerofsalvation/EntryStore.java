@@ -0,0 +1,267 @@
+package de.wikipedia.dealerofsalvation;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+import org.wikipedia.Wiki;
+import org.wikipedia.Wiki.Revision;
+
+/**
+ * Local copy of the maintenance lists, one file per category. Holds title →
+ * (revid, date) as written to the list pages, plus the last revision ID and
+ * a hash of the content of each list page the entries belong to. As long as
+ * nobody else edited the list pages, the bot can start from here instead of
+ * downloading and parsing them, and tell unchanged pages by the hash. For
+ * incremental runs it also remembers up to when category members have been
+ * read.
+ *
+ * File format, UTF-8, one record per line, tab separated:
+ *
+ * <pre>
+ * P	&lt;last revid of list page&gt;	&lt;list page&gt;	&lt;content hash&gt;
+ * H	&lt;high-water mark&gt;	&lt;other members&gt;
+ * E	&lt;revid&gt;	&lt;date&gt;	&lt;title&gt;
+ * U	&lt;title of member without entry&gt;
+ * </pre>
+ *
+ * The hash is missing in files of older versions. Other pages written as a
+ * whole, like the overview, are stored the same way, a P record per file.
+ */
+class EntryStore {
+
+	private static final Logger logger = Logger.getLogger(EntryStore.class
+			.getName());
+
+	private final Path directory;
+
+	private final Wiki wiki;
+
+	EntryStore(Path directory, Wiki wiki) {
+		this.directory = directory;
+		this.wiki = wiki;
+	}
+
+	/**
+	 * @return the stored state of the category, or null if there is none
+	 */
+	Snapshot load(MaintenanceCategory category) throws IOException {
+		Snapshot snapshot = new Snapshot();
+		try (BufferedReader in = Files.newBufferedReader(file(category),
+				StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] tokens = line.split("\t");
+				try {
+					switch (tokens[0]) {
+					case "P":
+						snapshot.pageRevids.put(tokens[2],
+								Long.parseLong(tokens[1]));
+						if (tokens.length > 3) {
+							snapshot.pageHashes.put(tokens[2], tokens[3]);
+						}
+						break;
+					case "H":
+						snapshot.highWaterMark = OffsetDateTime
+								.parse(tokens[1]);
+						snapshot.otherMembers = Integer.parseInt(tokens[2]);
+						break;
+					case "E":
+						LocalDate date = LocalDate.parse(tokens[2]);
+						Revision revision = wiki.new Revision(
+								Long.parseLong(tokens[1]), OffsetDateTime.of(
+										date, LocalTime.MIDNIGHT,
+										ZoneOffset.UTC), null);
+						snapshot.entries.put(tokens[3], revision);
+						break;
+					case "U":
+						snapshot.unlisted.add(tokens[1]);
+						break;
+					default:
+						throw new IllegalArgumentException(tokens[0]);
+					}
+				} catch (DateTimeParseException | IllegalArgumentException
+						| ArrayIndexOutOfBoundsException e) {
+					// Don't trust a damaged file, read the list pages instead
+					logger.warning("parse error in " + file(category)
+							+ " at line: " + line);
+					return null;
+				}
+			}
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Replaces the stored state of the category.
+	 *
+	 * @param snapshot
+	 *            last revision ID of each list page (-1 if it doesn't exist),
+	 *            the entries as written to the list pages and, if known, the
+	 *            high-water mark
+	 */
+	void save(MaintenanceCategory category, Snapshot snapshot)
+			throws IOException {
+		Files.createDirectories(directory);
+		Path file = file(category);
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (BufferedWriter out = Files.newBufferedWriter(tmp,
+				StandardCharsets.UTF_8)) {
+			for (Entry<String, Long> page : new TreeMap<>(snapshot.pageRevids)
+					.entrySet()) {
+				writePage(out, page.getKey(), page.getValue(),
+						snapshot.pageHashes.get(page.getKey()));
+			}
+			if (null != snapshot.highWaterMark) {
+				out.write("H\t" + snapshot.highWaterMark + "\t"
+						+ snapshot.otherMembers);
+				out.newLine();
+			}
+			for (Entry<String, Revision> entry : new TreeMap<>(
+					snapshot.entries).entrySet()) {
+				Revision revision = entry.getValue();
+				if (null == revision) {
+					continue;
+				}
+				out.write("E\t" + revision.getID() + "\t"
+						+ revision.getTimestamp().toLocalDate() + "\t"
+						+ entry.getKey());
+				out.newLine();
+			}
+			for (String title : new TreeSet<>(snapshot.unlisted)) {
+				out.write("U\t" + title);
+				out.newLine();
+			}
+		}
+		// Never leave a half written file behind
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @return last revision ID and content hash of a page stored by
+	 *         {@link #savePage(String, long, String)}, or null if unknown
+	 */
+	PageState loadPage(String page) throws IOException {
+		try (BufferedReader in = Files.newBufferedReader(pageFile(page),
+				StandardCharsets.UTF_8)) {
+			String[] tokens = String.valueOf(in.readLine()).split("\t");
+			if (tokens.length != 4 || !tokens[0].equals("P")
+					|| !tokens[2].equals(page)) {
+				logger.warning("parse error in " + pageFile(page));
+				return null;
+			}
+			return new PageState(Long.parseLong(tokens[1]), tokens[3]);
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (NumberFormatException e) {
+			logger.warning("parse error in " + pageFile(page));
+			return null;
+		}
+	}
+
+	void savePage(String page, long revid, String hash) throws IOException {
+		Files.createDirectories(directory);
+		Path file = pageFile(page);
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (BufferedWriter out = Files.newBufferedWriter(tmp,
+				StandardCharsets.UTF_8)) {
+			writePage(out, page, revid, hash);
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void writePage(BufferedWriter out, String page,
+			long revid, String hash) throws IOException {
+		out.write("P\t" + revid + "\t" + page);
+		if (null != hash) {
+			out.write("\t" + hash);
+		}
+		out.newLine();
+	}
+
+	/**
+	 * @return hex SHA-1 of the UTF-8 text, as the API reports it for
+	 *         revisions
+	 */
+	static String hash(String text) {
+		try {
+			MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+			return HexFormat.of().formatHex(sha1.digest(text
+					.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has SHA-1
+			throw new AssertionError(e);
+		}
+	}
+
+	private Path file(MaintenanceCategory category) {
+		return directory.resolve(URLEncoder.encode(category.getName(),
+				StandardCharsets.UTF_8) + ".txt");
+	}
+
+	private Path pageFile(String page) {
+		return directory.resolve(URLEncoder.encode(page,
+				StandardCharsets.UTF_8) + ".page");
+	}
+
+	static class PageState {
+		final long revid;
+		final String hash;
+
+		PageState(long revid, String hash) {
+			this.revid = revid;
+			this.hash = hash;
+		}
+	}
+
+	static class Snapshot {
+		final Map<String, Long> pageRevids = new HashMap<>();
+		/**
+		 * Hash of the content of each list page, see {@link #hash(String)}.
+		 * Missing if it was stored by an older version.
+		 */
+		final Map<String, String> pageHashes = new HashMap<>();
+		final Map<String, Revision> entries = new HashMap<>();
+		/**
+		 * Time the newest known member was added to the category, or null if
+		 * unknown.
+		 */
+		OffsetDateTime highWaterMark;
+		/**
+		 * Number of category members outside the article namespace, so that
+		 * the article count can be checked against the category size.
+		 */
+		int otherMembers;
+		/**
+		 * Category members without entry, because no maintenance template was
+		 * found in their history.
+		 */
+		final Set<String> unlisted = new HashSet<>();
+	}
+}
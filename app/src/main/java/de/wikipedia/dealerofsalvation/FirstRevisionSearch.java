@@ -0,0 +1,168 @@
+package de.wikipedia.dealerofsalvation;
+
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.wikipedia.Wiki.Revision;
+
+import de.wikipedia.dealerofsalvation.MaintenanceBot.NoMaintenanceTemplateFoundException;
+
+/**
+ * Linear search for the first revision containing the maintenance template of
+ * one category, fed with the revisions of one article, newest first. Several
+ * searches can share a history walk, see {@link HistoryAnalyzer}.
+ *
+ * The oldest revision of the newest run of revisions with template is the
+ * result, unless its removal was reverted: Edits without template by a
+ * single user, followed by a revision with template, count as reverted if
+ * the contents (sha1) are the same. An identity revert is also recognized
+ * up to {@link #MAX_REVERT_DEPTH} revisions back.
+ */
+class FirstRevisionSearch {
+
+	/**
+	 * How many revisions back an identity revert is recognized, like
+	 * MediaWiki's $wgRevertedTagMaxDepth.
+	 */
+	static final int MAX_REVERT_DEPTH = 15;
+
+	final MaintenanceCategory category;
+
+	private final String title;
+
+	/** Time the article was added to the category, newer revisions don't count */
+	private final OffsetDateTime rvStart;
+
+	// for each handler invocation, the oldest revision containing the
+	// maintenance
+	// template
+	private Revision revision1;
+
+	// for each handler invocation, the oldest revision by the same
+	// author as the
+	// nearest older revision than revision 1.
+	private Revision revision2;
+
+	// The heuristic above has come to a result. Only look for an identity
+	// revert now, which doesn't need content.
+	private boolean decided;
+
+	// number of revisions older than revision 1 seen so far
+	private int depth;
+
+	private boolean done;
+
+	private boolean notFound;
+
+	// category.matches() by sha1, so content seen before isn't read again
+	private final Map<String, Boolean> verdicts = new HashMap<>();
+
+	FirstRevisionSearch(MaintenanceCategory category, String title,
+			OffsetDateTime rvStart) {
+		this.category = category;
+		this.title = title;
+		this.rvStart = rvStart;
+	}
+
+	/**
+	 * @return true if both revisions have the same, known sha1
+	 */
+	static boolean isSameContent(Revision revision1, Revision revision) {
+		String sha1 = revision1.getSha1();
+		return null != sha1 && sha1.equals(revision.getSha1());
+	}
+
+	boolean isDone() {
+		return done;
+	}
+
+	OffsetDateTime getRvStart() {
+		return rvStart;
+	}
+
+	/**
+	 * @return true if {@link #offer} needs to know whether the revision
+	 *         contains the template
+	 */
+	boolean needsVerdict(Revision revision) {
+		return !done && isInRange(revision) && !decided
+				&& !(null != revision1 && isSameContent(revision1, revision))
+				&& !verdicts.containsKey(revision.getSha1());
+	}
+
+	/**
+	 * Takes the next older revision.
+	 *
+	 * @param matches
+	 *            whether it contains the template, only looked at if
+	 *            {@link #needsVerdict} was true
+	 */
+	void offer(Revision revision, boolean matches) {
+		if (done || !isInRange(revision)) {
+			return;
+		}
+		if (null != revision1 && isSameContent(revision1, revision)) {
+			// revision 1 restored this one, everything in between was
+			// reverted
+			revision1 = revision;
+			revision2 = null;
+			decided = false;
+			depth = 0;
+			return;
+		}
+		depth++;
+		if (decided) {
+			done = depth > MAX_REVERT_DEPTH;
+			return;
+		}
+		String sha1 = revision.getSha1();
+		Boolean known = (null == sha1) ? null : verdicts.get(sha1);
+		if (null != known) {
+			matches = known;
+		} else if (null != sha1) {
+			verdicts.put(sha1, matches);
+		}
+		if (matches) {
+			if (null != revision2) {
+				// not reverted
+				decided = true;
+			} else {
+				// current revision contains category
+				revision1 = revision;
+				depth = 0;
+			}
+		} else if (null == revision1) {
+			notFound = true;
+			done = true;
+		} else if (null == revision2) {
+			// remember this revision for revert check
+			revision2 = revision;
+		} else {
+			// perform revert check
+			String user2 = revision2.getUser();
+			String user = revision.getUser();
+			if (user.equals(user2)) {
+				// remember another revision for revert check
+				revision2 = revision;
+			} else {
+				decided = true;
+			}
+		}
+	}
+
+	/**
+	 * @return the first revision with template, or null if there are no
+	 *         revisions up to rvStart
+	 */
+	Revision result() throws NoMaintenanceTemplateFoundException {
+		if (notFound) {
+			throw new NoMaintenanceTemplateFoundException(category, title);
+		}
+		return revision1;
+	}
+
+	private boolean isInRange(Revision revision) {
+		return null == rvStart || !revision.getTimestamp().isAfter(rvStart);
+	}
+}
@@ -0,0 +1,216 @@
+package de.wikipedia.dealerofsalvation;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Logger;
+
+import org.wikipedia.Wiki;
+import org.wikipedia.Wiki.Revision;
+import org.wikipedia.Wiki.RevisionWalker;
+
+import de.wikipedia.dealerofsalvation.MaintenanceBot.NoMaintenanceTemplateFoundException;
+
+/**
+ * Finds the first revision with template for newly added articles. A walk is
+ * submitted with the first request for an article. Requests of other
+ * categories join it while it waits for a walker, so the history is walked
+ * once for all of them, checking each revision against all of them in one
+ * scan.
+ */
+class HistoryAnalyzer {
+
+	private static final Logger logger = Logger.getLogger(HistoryAnalyzer.class
+			.getName());
+
+	private final Wiki wiki;
+
+	private final ExecutorService walkers;
+
+	private final CheckpointJournal journal;
+
+	private final boolean contentOnDemand;
+
+	private final boolean bisect;
+
+	/** title → walk still waiting for a walker */
+	private final Map<String, Walk> queued = new HashMap<>();
+
+	HistoryAnalyzer(Wiki wiki, ExecutorService walkers,
+			CheckpointJournal journal, boolean contentOnDemand, boolean bisect) {
+		this.wiki = wiki;
+		this.walkers = walkers;
+		this.journal = journal;
+		this.contentOnDemand = contentOnDemand;
+		this.bisect = bisect;
+	}
+
+	/**
+	 * Requests the first revision with template of an article. Joins the walk
+	 * of the article if one is waiting for a walker, else submits a new one.
+	 * An article requested again once its walk has started is walked again.
+	 *
+	 * @param rvStart
+	 *            time the article was added to the category, or null
+	 * @return the revision, or null if the template wasn't found. Cancel it
+	 *         to stop the walk if no other category waits for it.
+	 */
+	synchronized CompletableFuture<Revision> request(
+			MaintenanceCategory category, String title, OffsetDateTime rvStart) {
+		Request request = new Request(new FirstRevisionSearch(category, title,
+				rvStart));
+		Walk walk = queued.get(title);
+		if (null == walk) {
+			walk = new Walk(title);
+			queued.put(title, walk);
+			walkers.submit(walk);
+		}
+		walk.requests.add(request);
+		return request.future;
+	}
+
+	/**
+	 * @param titleRequests
+	 *            not cancelled when the walk started
+	 */
+	private void walk(String title, List<Request> titleRequests)
+			throws IOException {
+		// Start at the newest rvStart, older ones skip the revisions in between
+		OffsetDateTime rvStart = null;
+		for (Request request : titleRequests) {
+			OffsetDateTime start = request.search.getRvStart();
+			if (null == start) {
+				rvStart = null;
+				break;
+			}
+			if (null == rvStart || start.isAfter(rvStart)) {
+				rvStart = start;
+			}
+		}
+		if (bisect) {
+			bisect(title, titleRequests, rvStart);
+			return;
+		}
+		try (RevisionWalker walker = wiki.new RevisionWalker(title, rvStart,
+				contentOnDemand)) {
+			while (walker.next()) {
+				Revision revision = walker.revision();
+				Set<MaintenanceCategory> needed = new HashSet<>();
+				boolean done = true;
+				for (Request request : titleRequests) {
+					// cancelled after a failure elsewhere
+					done &= request.search.isDone() || request.future.isDone();
+					if (request.search.needsVerdict(revision)) {
+						needed.add(request.search.category);
+					}
+				}
+				if (done) {
+					break;
+				}
+				Set<MaintenanceCategory> matching = needed;
+				if (!needed.isEmpty()) {
+					MaintenanceCategory.Matcher matcher = new MaintenanceCategory.Matcher(
+							needed);
+					walker.scan(matcher::feed);
+					matching = matcher.getResult();
+				}
+				for (Request request : titleRequests) {
+					request.search.offer(revision,
+							matching.contains(request.search.category));
+				}
+			}
+		}
+		for (Request request : titleRequests) {
+			try {
+				complete(title, request, request.search.result());
+			} catch (NoMaintenanceTemplateFoundException e) {
+				logger.warning(e.getMessage());
+				request.future.complete(null);
+			}
+		}
+	}
+
+	/**
+	 * See {@link BisectingSearch}. The metadata is read once, contents are
+	 * read per category.
+	 */
+	private void bisect(String title, List<Request> titleRequests,
+			OffsetDateTime rvStart) throws IOException {
+		List<Revision> history = wiki.getPageHistory(title, null == rvStart
+				? null : wiki.new RequestHelper().withinDateRange(null, rvStart));
+		for (Request request : titleRequests) {
+			if (request.future.isDone()) {
+				continue;
+			}
+			OffsetDateTime start = request.search.getRvStart();
+			List<Revision> categoryHistory = new ArrayList<>();
+			for (Revision revision : history) {
+				if (null == start || !revision.getTimestamp().isAfter(start)) {
+					categoryHistory.add(revision);
+				}
+			}
+			try {
+				complete(title, request, new BisectingSearch(
+						request.search.category, title, categoryHistory,
+						revids -> wiki.getText(null, revids, -1)).find());
+			} catch (NoMaintenanceTemplateFoundException e) {
+				logger.warning(e.getMessage());
+				request.future.complete(null);
+			}
+		}
+	}
+
+	private void complete(String title, Request request, Revision revision) {
+		if (null != revision) {
+			journal.record(request.search.category, title, revision);
+		}
+		request.future.complete(revision);
+	}
+
+	/** The requests of all categories for one article */
+	private class Walk implements Runnable {
+		final String title;
+		final List<Request> requests = new ArrayList<>();
+
+		Walk(String title) {
+			this.title = title;
+		}
+
+		@Override
+		public void run() {
+			List<Request> titleRequests;
+			synchronized (HistoryAnalyzer.this) {
+				// later requests start a walk of their own
+				queued.remove(title, this);
+				titleRequests = new ArrayList<>(requests);
+			}
+			titleRequests.removeIf(request -> request.future.isDone());
+			if (titleRequests.isEmpty()) {
+				return;
+			}
+			try {
+				walk(title, titleRequests);
+			} catch (IOException | RuntimeException | Error e) {
+				for (Request request : titleRequests) {
+					request.future.completeExceptionally(e);
+				}
+			}
+		}
+	}
+
+	private static class Request {
+		final FirstRevisionSearch search;
+		final CompletableFuture<Revision> future = new CompletableFuture<>();
+
+		Request(FirstRevisionSearch search) {
+			this.search = search;
+		}
+	}
+}
@@ -0,0 +1,410 @@
+package de.wikipedia.dealerofsalvation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.ToIntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.wikipedia.Wiki.Revision;
+
+/**
+ * Splits a maintenance list into pages of about a target size. A list that
+ * fits stays on one page. Otherwise it is cut by year, a year too large by
+ * month, and a month too large by title. Consecutive pieces share a page as
+ * long as they fit, so quiet years don't get a page each.
+ *
+ * Each page starts at a fixed point of the list, given by its name, e. g.
+ * "2012", "2005–2009", "2015-03" or "2015-03 ab Bad Ischl", one level below
+ * the list page. The pages of the last run are kept as they are, only a page
+ * that grows beyond the target is cut, and a page that shrinks to a quarter
+ * of it is joined with a neighbour if both fill no more than half. So a new
+ * entry changes one page, and page names don't change from run to run.
+ */
+class ListSharding {
+
+	/** One page of a list */
+	static class Shard {
+		/** null for the whole list on one page */
+		final String label;
+		final Map<String, Revision> entries;
+		private final Set<Integer> years = new HashSet<>();
+
+		Shard(String label, Map<String, Revision> entries) {
+			this.label = label;
+			this.entries = entries;
+			for (Revision revision : entries.values()) {
+				if (null != revision) {
+					years.add(revision.getTimestamp().getYear());
+				}
+			}
+		}
+
+		/**
+		 * @return true if the page holds entries of this year
+		 */
+		boolean covers(int year) {
+			return years.contains(year);
+		}
+	}
+
+	/** Position in a list. Year and month starts have an empty title. */
+	private static class Key implements Comparable<Key> {
+		final int year;
+		final int month;
+		final String title;
+
+		Key(int year, int month, String title) {
+			this.year = year;
+			this.month = month;
+			this.title = title;
+		}
+
+		@Override
+		public int compareTo(Key other) {
+			if (year != other.year) {
+				return Integer.compare(year, other.year);
+			}
+			if (month != other.month) {
+				return Integer.compare(month, other.month);
+			}
+			return title.compareTo(other.title);
+		}
+
+		String month() {
+			return String.format("%d-%02d", year, month);
+		}
+	}
+
+	private static class Item {
+		final Key key;
+		final Entry<String, Revision> entry;
+		final int bytes;
+
+		Item(Entry<String, Revision> entry, int bytes) {
+			this.key = new Key(entry.getValue().getTimestamp().getYear(),
+					entry.getValue().getTimestamp().getMonthValue(),
+					entry.getKey());
+			this.entry = entry;
+			this.bytes = bytes;
+		}
+	}
+
+	/** Longest title in a page name */
+	private static final int MAX_TITLE = 50;
+
+	private static final Pattern YEAR = Pattern.compile("(\\d{4})(?:–\\d{4})?");
+
+	private static final Pattern MONTH = Pattern
+			.compile("(\\d{4})-(\\d{2})(?:–\\d{4}-\\d{2})?");
+
+	private static final Pattern TITLE = Pattern
+			.compile("(\\d{4})-(\\d{2}) ab (.+?)(?:–\\d{4}-\\d{2})?");
+
+	private final long targetBytes;
+
+	private final int headerBytes;
+
+	private final ToIntFunction<Entry<String, Revision>> lineBytes;
+
+	private final int lastYear;
+
+	/**
+	 * @param targetBytes
+	 *            size a page should not exceed
+	 * @param headerBytes
+	 *            size of a page without entries
+	 * @param lineBytes
+	 *            size of the line of an entry
+	 * @param lastYear
+	 *            end of the last page
+	 */
+	ListSharding(long targetBytes, int headerBytes,
+			ToIntFunction<Entry<String, Revision>> lineBytes, int lastYear) {
+		this.targetBytes = targetBytes;
+		this.headerBytes = headerBytes;
+		this.lineBytes = lineBytes;
+		this.lastYear = lastYear;
+	}
+
+	/**
+	 * @param split
+	 *            if set, the list is cut by date even if it fits on one page
+	 * @param previous
+	 *            names of the pages below the list page used so far, empty if
+	 *            the list was on one page or is new. Names not made by this
+	 *            class are ignored.
+	 * @return the pages in list order. No pages for an empty split list.
+	 */
+	List<Shard> shard(Map<String, Revision> entries, boolean split,
+			Collection<String> previous) {
+		List<Item> items = new ArrayList<>();
+		for (Entry<String, Revision> entry : entries.entrySet()) {
+			if (null != entry.getValue()) {
+				items.add(new Item(entry, lineBytes.applyAsInt(entry)));
+			}
+		}
+		items.sort(Comparator.comparing(item -> item.key));
+		List<Key> starts = parse(previous);
+		// back to one page only when it's well below the target
+		if (!split
+				&& fits(bytes(items), starts.isEmpty() ? targetBytes
+						: targetBytes / 2)) {
+			List<Shard> result = new ArrayList<>();
+			result.add(new Shard(null, entries));
+			return result;
+		}
+		if (starts.isEmpty()) {
+			if (items.isEmpty()) {
+				return new ArrayList<>();
+			}
+			starts = cut(items, null);
+		} else {
+			starts = merge(items, cutLarge(items, starts));
+		}
+		List<List<Item>> groups = assign(items, starts);
+		List<Shard> result = new ArrayList<>();
+		for (int i = 0; i < starts.size(); i++) {
+			Map<String, Revision> shardEntries = new LinkedHashMap<>();
+			for (Item item : groups.get(i)) {
+				shardEntries.put(item.entry.getKey(), item.entry.getValue());
+			}
+			result.add(new Shard(label(starts.get(i), i + 1 < starts.size()
+					? starts.get(i + 1) : null), shardEntries));
+		}
+		return result;
+	}
+
+	/** Cuts the pages that grew beyond the target */
+	private List<Key> cutLarge(List<Item> items, List<Key> starts) {
+		List<Key> result = new ArrayList<>();
+		List<List<Item>> groups = assign(items, starts);
+		for (int i = 0; i < starts.size(); i++) {
+			if (fits(bytes(groups.get(i)), targetBytes)) {
+				result.add(starts.get(i));
+			} else {
+				result.addAll(cut(groups.get(i), starts.get(i)));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Joins pages below a quarter of the target with a neighbour, as long as
+	 * both together fill no more than half of it.
+	 */
+	private List<Key> merge(List<Item> items, List<Key> starts) {
+		List<Key> result = new ArrayList<>(starts);
+		List<Long> sizes = new ArrayList<>();
+		for (List<Item> group : assign(items, starts)) {
+			sizes.add(bytes(group));
+		}
+		int i = 0;
+		while (i < result.size()) {
+			if (!fits(sizes.get(i), targetBytes / 4 - 1)) {
+				i++;
+			} else if (i + 1 < result.size()
+					&& fits(sizes.get(i) + sizes.get(i + 1), targetBytes / 2)) {
+				sizes.set(i, sizes.get(i) + sizes.remove(i + 1));
+				result.remove(i + 1);
+			} else if (i > 0
+					&& fits(sizes.get(i - 1) + sizes.get(i), targetBytes / 2)) {
+				sizes.set(i - 1, sizes.get(i - 1) + sizes.remove(i));
+				result.remove(i);
+			} else {
+				i++;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Cuts items into pages by year, month and title, and joins consecutive
+	 * pieces as long as they fit.
+	 *
+	 * @param first
+	 *            start of the first page, null for the start of its first
+	 *            piece
+	 * @return the starts of the pages
+	 */
+	private List<Key> cut(List<Item> items, Key first) {
+		List<Key> pieces = new ArrayList<>();
+		List<Long> sizes = new ArrayList<>();
+		int i = 0;
+		while (i < items.size()) {
+			int year = items.get(i).key.year;
+			int end = i;
+			while (end < items.size() && items.get(end).key.year == year) {
+				end++;
+			}
+			addPieces(pieces, sizes, items.subList(i, end), true);
+			i = end;
+		}
+		List<Key> result = new ArrayList<>();
+		long bytes = 0;
+		for (int j = 0; j < pieces.size(); j++) {
+			if (j == 0 || !fits(bytes + sizes.get(j), targetBytes)) {
+				Key start = j == 0 && null != first ? first : pieces.get(j);
+				if (result.isEmpty()
+						|| start.compareTo(result.get(result.size() - 1)) > 0) {
+					result.add(start);
+				}
+				bytes = 0;
+			}
+			bytes += sizes.get(j);
+		}
+		return result;
+	}
+
+	/**
+	 * @param byMonth
+	 *            true for the items of a year, false for those of a month
+	 */
+	private void addPieces(List<Key> pieces, List<Long> sizes,
+			List<Item> items, boolean byMonth) {
+		Key first = items.get(0).key;
+		long bytes = bytes(items);
+		if (fits(bytes, targetBytes)) {
+			pieces.add(new Key(first.year, byMonth ? 1 : first.month, ""));
+			sizes.add(bytes);
+		} else if (byMonth) {
+			int i = 0;
+			while (i < items.size()) {
+				int month = items.get(i).key.month;
+				int end = i;
+				while (end < items.size() && items.get(end).key.month == month) {
+					end++;
+				}
+				addPieces(pieces, sizes, items.subList(i, end), false);
+				i = end;
+			}
+		} else {
+			// in title order, as sorted
+			Key start = new Key(first.year, first.month, "");
+			long partBytes = 0;
+			for (Item item : items) {
+				String title = boundary(item.key.title);
+				if (partBytes > 0 && !fits(partBytes + item.bytes, targetBytes)
+						&& title.compareTo(start.title) > 0) {
+					pieces.add(start);
+					sizes.add(partBytes);
+					start = new Key(first.year, first.month, title);
+					partBytes = 0;
+				}
+				partBytes += item.bytes;
+			}
+			pieces.add(start);
+			sizes.add(partBytes);
+		}
+	}
+
+	/**
+	 * @return the start of a page beginning at this title, short and without
+	 *         "/", so it can be part of a page name
+	 */
+	private static String boundary(String title) {
+		String result = title;
+		if (result.indexOf('/') >= 0) {
+			result = result.substring(0, result.indexOf('/'));
+		}
+		if (result.length() > MAX_TITLE) {
+			int length = MAX_TITLE;
+			if (Character.isHighSurrogate(result.charAt(length - 1))) {
+				length--;
+			}
+			result = result.substring(0, length);
+		}
+		return result.strip();
+	}
+
+	/**
+	 * @return the items of each page. Items before the first start belong to
+	 *         the first page.
+	 */
+	private static List<List<Item>> assign(List<Item> items, List<Key> starts) {
+		List<List<Item>> result = new ArrayList<>();
+		for (int i = 0; i < starts.size(); i++) {
+			result.add(new ArrayList<>());
+		}
+		int page = 0;
+		for (Item item : items) {
+			while (page + 1 < starts.size()
+					&& item.key.compareTo(starts.get(page + 1)) >= 0) {
+				page++;
+			}
+			result.get(page).add(item);
+		}
+		return result;
+	}
+
+	/**
+	 * @param next
+	 *            start of the next page, null for the last one
+	 */
+	private String label(Key start, Key next) {
+		int endYear = lastYear;
+		int endMonth = 12;
+		if (null != next) {
+			endYear = next.year;
+			endMonth = next.month;
+			if (next.title.isEmpty()) {
+				// ends before that month
+				endMonth--;
+				if (endMonth == 0) {
+					endYear--;
+					endMonth = 12;
+				}
+			}
+		}
+		Key end = new Key(endYear, endMonth, "");
+		boolean oneMonth = endYear == start.year && endMonth == start.month;
+		if (!start.title.isEmpty()) {
+			return start.month() + " ab " + start.title
+					+ (oneMonth ? "" : "–" + end.month());
+		}
+		if (start.month == 1 && endMonth == 12) {
+			return start.year + (endYear == start.year ? "" : "–" + endYear);
+		}
+		return start.month() + (oneMonth ? "" : "–" + end.month());
+	}
+
+	/**
+	 * @return the starts of the pages named, in list order
+	 */
+	private static List<Key> parse(Collection<String> labels) {
+		TreeSet<Key> result = new TreeSet<>();
+		for (String label : labels) {
+			Matcher matcher;
+			if ((matcher = YEAR.matcher(label)).matches()) {
+				result.add(new Key(Integer.parseInt(matcher.group(1)), 1, ""));
+			} else if ((matcher = MONTH.matcher(label)).matches()) {
+				result.add(new Key(Integer.parseInt(matcher.group(1)), Integer
+						.parseInt(matcher.group(2)), ""));
+			} else if ((matcher = TITLE.matcher(label)).matches()) {
+				result.add(new Key(Integer.parseInt(matcher.group(1)), Integer
+						.parseInt(matcher.group(2)), matcher.group(3)));
+			}
+		}
+		return new ArrayList<>(result);
+	}
+
+	private boolean fits(long bytes, long limit) {
+		return headerBytes + bytes <= limit;
+	}
+
+	private static long bytes(List<Item> items) {
+		long bytes = 0;
+		for (Item item : items) {
+			bytes += item.bytes;
+		}
+		return bytes;
+	}
+}
@@ -3,8 +3,10 @@ package de.wikipedia.dealerofsalvation;
 import static java.util.Calendar.YEAR;
 
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.text.DateFormat;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
@@ -14,9 +16,12 @@ import java.time.LocalTime;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -25,15 +30,24 @@ import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.security.auth.login.LoginException;
 
+import org.wikipedia.ConcurrencyController;
+import org.wikipedia.RevisionTextCache;
 import org.wikipedia.Wiki;
 import org.wikipedia.Wiki.CategoryMember;
 import org.wikipedia.Wiki.Revision;
-import org.wikipedia.Wiki.RevisionWalker;
 
 public class MaintenanceBot {
 
@@ -51,7 +65,6 @@ public class MaintenanceBot {
 			try (FileInputStream in = new FileInputStream("mbot.properties")) {
 				properties.load(in);
 			}
-			// TODO Not-Schreiben über Runtime.getRuntime().addShutdownHook
 			new MaintenanceBot(properties).run();
 		} catch (LoginException | IOException | RuntimeException | Error e) {
 			logger.log(Level.SEVERE, "Bot stopped", e);
@@ -68,23 +81,107 @@ public class MaintenanceBot {
 
 	private static final int FIRST_YEAR = 2005;
 
+	/**
+	 * Upper bound for the total size of list pages read in one request, safely
+	 * below the API's result size limit of 12 MB.
+	 */
+	private static final int MAX_READ_BYTES = 8 << 20;
+
+	/** Content hash of a list page that is empty or doesn't exist */
+	private static final String EMPTY_HASH = EntryStore.hash("");
+
 	private final int currentYear = Calendar.getInstance().get(YEAR);
 
 	int grandTotal;
 
 	/**
-	 * Stores the old list contents. They are used to compare old and new text,
-	 * and to skip editing in case they are equal. With content size close to
-	 * the limit, this might typically avoid a no-effect edit taking half a
-	 * minute.
+	 * Number of categories whose lists, members and histories are read at the
+	 * same time. Most of that time is spent waiting on HTTP.
+	 */
+	private final int categoryThreads;
+
+	/**
+	 * Maximum number of history walks (see {@link HistoryAnalyzer}) running at
+	 * the same time, shared by all categories.
+	 */
+	private final int walkerThreads;
+
+	/**
+	 * Edits queued but not done yet. Bounds the hand-off between analyzing
+	 * and writing: analysis runs ahead of the throttled writes by this many
+	 * list pages, and no further, so rendered texts don't pile up in memory.
+	 */
+	private final Semaphore writeSlots;
+
+	/**
+	 * Local copy of the lists, used instead of reading the list pages as long
+	 * as nobody else edited them.
+	 */
+	private final EntryStore store;
+
+	private final Path stateDir;
+
+	/**
+	 * Results of the history walks of this run and of an unfinished earlier
+	 * run. Opened by {@link #run()}.
+	 */
+	private CheckpointJournal journal;
+
+	/**
+	 * If set, only members added since the last run are read, as long as the
+	 * result adds up to the size of the category.
+	 */
+	private final boolean incremental;
+
+	/**
+	 * If set, history walks read metadata first and content only for the
+	 * revisions they actually inspect.
+	 */
+	private final boolean contentOnDemand;
+
+	/**
+	 * If set, the first revision with template is searched by bisection
+	 * instead of walking the history.
+	 */
+	private final boolean bisect;
+
+	/**
+	 * Size a list page should not exceed, see {@link ListSharding}. Large
+	 * pages make every edit slow.
 	 */
-	private final Map<String, String> listContents = new HashMap<>();
+	private final long listPageBytes;
 
 	public MaintenanceBot(Properties properties) {
 		wiki = Wiki.newSession("de.wikipedia.org");
 		tablePrefix = properties.getProperty("tablePrefix");
 		user = properties.getProperty("user");
 		password = properties.getProperty("password");
+		categoryThreads = Integer.parseInt(properties.getProperty(
+				"categoryThreads", "4"));
+		walkerThreads = Integer.parseInt(properties.getProperty(
+				"walkerThreads", "8"));
+		stateDir = Paths.get(properties.getProperty("stateDir", "state"));
+		store = new EntryStore(stateDir, wiki);
+		incremental = Boolean.parseBoolean(properties.getProperty(
+				"incremental", "false"));
+		contentOnDemand = Boolean.parseBoolean(properties.getProperty(
+				"contentOnDemand", "true"));
+		bisect = Boolean.parseBoolean(properties.getProperty("bisect",
+				"false"));
+		long revisionCacheChars = Long.parseLong(properties.getProperty(
+				"revisionCacheChars", "50000000"));
+		if (revisionCacheChars > 0) {
+			wiki.setRevisionTextCache(new RevisionTextCache(
+					revisionCacheChars, stateDir.resolve("revisions")));
+		}
+		writeSlots = new Semaphore(Integer.parseInt(properties.getProperty(
+				"queuedWrites", "10")));
+		int maxRequests = Integer.parseInt(properties.getProperty(
+				"maxRequests", "16"));
+		wiki.setConcurrencyController(new ConcurrencyController(Math.min(2,
+				maxRequests), maxRequests));
+		listPageBytes = Long.parseLong(properties.getProperty("listPageBytes",
+				"500000"));
 	}
 
 	public void run() throws LoginException, IOException {
@@ -101,73 +198,420 @@ public class MaintenanceBot {
 		}
 		overview.append(" !! Ältester Baustein !! Durchschnittsalter (Tage)\n");
 
-		for (MaintenanceCategory category : MaintenanceCategory
-				.getCategoriesFromConfigFile()) {
-			CategoryStatistics stats = new CategoryStatistics(category);
-			// Work map, starting with entries read from last state of wiki page
-			Map<String, Revision> entries = readMaintenanceInfo(category);
-			stats.setOldCount(entries.size());
-
-			// Map of pages in category, as currently queried from API, and, if
-			// MaintenanceCategory.queryTimestamp is set, the
-			// timestamp the category was added to the page.
-			Map<String, OffsetDateTime> currentEntries = readCurrentEntries(category);
-
-			// Remove old entries from work map:
-			entries.keySet().retainAll(currentEntries.keySet());
-			stats.setCountAfterRemove(entries.size());
+		List<MaintenanceCategory> categories = MaintenanceCategory
+				.getCategoriesFromConfigFile();
+		journal = new CheckpointJournal(stateDir.resolve("journal.txt"), wiki);
+		// Flush the journal even if the bot is stopped from outside
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
 			try {
-				// Add new entries to work map:
-				for (Entry<String, OffsetDateTime> entry : currentEntries.entrySet()) {
-					String title = entry.getKey();
-					if (!entries.containsKey(title)) {
-						// Timestamp the article was added according to API
-						OffsetDateTime timestamp = entry.getValue();
-						try {
-							Revision revision = queryFirstRevisionWithTemplate(
-									category, title, timestamp);
-							entries.put(title, revision);
-							stats.entryAdded();
-						} catch (NoMaintenanceTemplateFoundException e) {
-							logger.warning(e.getMessage());
-						}
+				journal.close();
+			} catch (IOException e) {
+				logger.log(Level.WARNING, "Closing journal failed", e);
+			}
+		}));
+		ExecutorService executor = Executors
+				.newFixedThreadPool(categoryThreads);
+		ExecutorService walkers = Executors.newFixedThreadPool(walkerThreads);
+		try {
+			Map<MaintenanceCategory, EntryStore.Snapshot> states = readMaintenanceInfo(categories);
+			HistoryAnalyzer historyAnalyzer = new HistoryAnalyzer(wiki,
+					walkers, journal, contentOnDemand, bisect);
+			List<Future<PendingCategory>> preparations = new ArrayList<>();
+			for (MaintenanceCategory category : categories) {
+				EntryStore.Snapshot state = states.get(category);
+				preparations.add(executor.submit(() -> prepare(category,
+						state, historyAnalyzer)));
+			}
+			// Write in cats.xml order, so edits and overview are the same as
+			// in a sequential run. Walks start as the categories are read, so
+			// the first category is written while later ones are still read.
+			// Edits are queued, so the next category is analyzed while they
+			// drain at the throttled rate, up to writeSlots list pages ahead.
+			List<CompletableFuture<Void>> saves = new ArrayList<>();
+			for (Future<PendingCategory> preparation : preparations) {
+				// stop at the first failed write, as a sequential run would
+				for (CompletableFuture<Void> save : saves) {
+					if (save.isDone()) {
+						awaitWrite(save);
 					}
 				}
-				for (Revision revision : entries.values()) {
-					stats.analyze(revision);
-				}
-				writeMaintenanceInfo(category, entries, stats, overview);
-				grandTotal += stats.getNewCount();
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-				// TODO entries in Datei retten. Kann man shutdownRequest darauf
-				// aufbauend implementieren?
+				AnalyzedCategory result = analyze(getResult(preparation));
+				Map<String, CompletableFuture<Long>> edits = writeMaintenanceInfo(
+						result.category, result.entries, result.stats,
+						result.state, overview);
+				grandTotal += result.stats.getNewCount();
+				// on the write thread, behind the category's edits
+				saves.add(CompletableFuture.allOf(
+						edits.values().toArray(new CompletableFuture<?>[0]))
+						.thenCompose(done -> wiki.scheduleWrite(() -> saveState(
+								result, edits))));
+			}
+			for (CompletableFuture<Void> save : saves) {
+				awaitWrite(save);
 			}
+		} finally {
+			executor.shutdownNow();
+			walkers.shutdownNow();
+			journal.close();
+			if (null != wiki.getRevisionTextCache()) {
+				logger.info(wiki.getRevisionTextCache().toString());
+			}
+			logger.info(wiki.getConcurrencyController().toString());
 		}
 		overview.append("|}\n");
-		wiki.edit(tablePrefix, overview.toString(),
+		writeOverview(overview.toString());
+		// Everything is in the lists and the store now
+		journal.delete();
+	}
+
+	/**
+	 * Edits the overview, unless the bot wrote the same text last time and
+	 * nobody edited it since.
+	 */
+	private void writeOverview(String text) throws LoginException,
+			IOException {
+		String hash = EntryStore.hash(text);
+		EntryStore.PageState last = store.loadPage(tablePrefix);
+		Map<String, Object> info = wiki.getPageInfo(List.of(tablePrefix)).get(
+				0);
+		if (null != last && null != info && last.hash.equals(hash)
+				&& Long.valueOf(last.revid).equals(info.get("lastrevid"))) {
+			logger.info("Overview unchanged");
+			return;
+		}
+		// the revision saved, as somebody else may edit right after
+		long revid = wiki.edit(tablePrefix, text,
 				"Bot: Übersicht aktualisiert, " + grandTotal
-						+ " Artikel in allen Listen.");
+						+ " Artikel in allen Listen.", wiki.isMarkMinor(),
+				wiki.isMarkBot(), -2, null, info);
+		store.savePage(tablePrefix, revid, hash);
+	}
+
+	/**
+	 * Read phase of one category: reads the current category members and
+	 * requests the histories of newly added articles. Does not write anything,
+	 * so it may run in parallel for several categories.
+	 * 
+	 * @param state
+	 *            old state of the list, as read by readMaintenanceInfo
+	 * @param historyAnalyzer
+	 *            walks the histories of newly added articles
+	 */
+	private PendingCategory prepare(MaintenanceCategory category,
+			EntryStore.Snapshot state, HistoryAnalyzer historyAnalyzer)
+			throws IOException {
+		CategoryStatistics stats = new CategoryStatistics(category);
+		// Work map, starting with entries read from last state of wiki page
+		Map<String, Revision> entries = state.entries;
+		stats.setOldCount(entries.size());
+
+		// Map of pages in category, as currently queried from API, and, if
+		// MaintenanceCategory.queryTimestamp is set, the
+		// timestamp the category was added to the page.
+		Map<String, OffsetDateTime> currentEntries = null;
+		if (incremental && null != state.highWaterMark) {
+			currentEntries = readChangedEntries(category, state);
+		}
+		if (null == currentEntries) {
+			currentEntries = readCurrentEntries(category, state);
+		}
+
+		// Remove old entries from work map:
+		entries.keySet().retainAll(currentEntries.keySet());
+		stats.setCountAfterRemove(entries.size());
+		// Add new entries to work map:
+		// The walks run concurrently, results are merged in title order.
+		// Each result goes to the journal at once, so a later run can resume
+		// after an IOException.
+		PendingCategory pending = new PendingCategory(category, state, stats,
+				currentEntries.keySet());
+		for (Entry<String, OffsetDateTime> entry : currentEntries.entrySet()) {
+			String title = entry.getKey();
+			if (null == entry.getValue() && state.unlisted.contains(title)) {
+				// No template found last time, and not added again since
+				// (incremental run). Walking it again would find the same.
+				continue;
+			}
+			if (!entries.containsKey(title)) {
+				Revision resolved = journal.get(category, title);
+				if (null != resolved) {
+					pending.walks.put(title,
+							CompletableFuture.completedFuture(resolved));
+					continue;
+				}
+				// Timestamp the article was added according to API
+				OffsetDateTime timestamp = entry.getValue();
+				pending.walks.put(title,
+						historyAnalyzer.request(category, title, timestamp));
+			}
+		}
+		return pending;
+	}
+
+	/**
+	 * Analyze phase of one category: merges the results of the history walks
+	 * into the entries.
+	 */
+	private AnalyzedCategory analyze(PendingCategory pending)
+			throws IOException {
+		Map<String, Revision> entries = pending.state.entries;
+		CategoryStatistics stats = pending.stats;
+		try {
+			for (Entry<String, Future<Revision>> walk : pending.walks
+					.entrySet()) {
+				Revision revision = getResult(walk.getValue());
+				if (null != revision) {
+					entries.put(walk.getKey(), revision);
+					stats.entryAdded();
+				}
+			}
+		} finally {
+			// Don't keep the walkers busy after a failure
+			for (Future<Revision> walk : pending.walks.values()) {
+				walk.cancel(true);
+			}
+		}
+		for (Revision revision : entries.values()) {
+			stats.analyze(revision);
+		}
+		// Members without template found; remembered for incremental runs
+		EntryStore.Snapshot state = pending.state;
+		state.unlisted.clear();
+		state.unlisted.addAll(pending.members);
+		state.unlisted.removeAll(entries.keySet());
+		return new AnalyzedCategory(pending.category, state, stats);
+	}
+
+	private static void awaitWrite(Future<Void> write) throws LoginException,
+			IOException {
+		try {
+			getResult(write);
+		} catch (RuntimeException e) {
+			if (e.getCause() instanceof LoginException) {
+				throw (LoginException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	private static <T> T getResult(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while analyzing", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/** New text of a list page */
+	static class ListEdit {
+		final String text;
+		final String summary;
+
+		ListEdit(String text, String summary) {
+			this.text = text;
+			this.summary = summary;
+		}
+	}
+
+	/**
+	 * Result of the read phase of one category, waiting for the history walks.
+	 */
+	static class PendingCategory {
+		final MaintenanceCategory category;
+		final EntryStore.Snapshot state;
+		final CategoryStatistics stats;
+		/** current category members */
+		final Set<String> members;
+		final SortedMap<String, Future<Revision>> walks = new TreeMap<>();
+
+		PendingCategory(MaintenanceCategory category,
+				EntryStore.Snapshot state, CategoryStatistics stats,
+				Set<String> members) {
+			this.category = category;
+			this.state = state;
+			this.stats = stats;
+			this.members = members;
+		}
+	}
+
+	/**
+	 * Result of the read/analyze phase of one category, waiting to be written.
+	 */
+	static class AnalyzedCategory {
+		final MaintenanceCategory category;
+		final Map<String, Revision> entries;
+		final CategoryStatistics stats;
+		/** New state of the category, to be stored once it is written */
+		final EntryStore.Snapshot state;
+
+		AnalyzedCategory(MaintenanceCategory category,
+				EntryStore.Snapshot state, CategoryStatistics stats) {
+			this.category = category;
+			this.entries = state.entries;
+			this.stats = stats;
+			this.state = state;
+		}
 	}
 
 	private Map<String, OffsetDateTime> readCurrentEntries(
-			MaintenanceCategory category) throws IOException {
+			MaintenanceCategory category, EntryStore.Snapshot state)
+			throws IOException {
 		String name = category.getName();
-		List<CategoryMember> members = wiki.getCategoryMembers("Wikipedia:" 
-				+ name, 0);
 		Map<String, OffsetDateTime> result = new HashMap<>();
-		for (CategoryMember member : members) {
+		state.highWaterMark = null;
+		// Members are taken as they are parsed, large categories aren't
+		// held twice
+		wiki.forEachCategoryMember("Wikipedia:" + name, member -> {
+			result.put(member.getTitle(), member.getTimestamp());
+			raiseHighWaterMark(state, member.getTimestamp());
+		}, 0);
+		if (incremental) {
+			state.otherMembers = categorySize(category) - result.size();
+		}
+		return result;
+	}
+
+	/**
+	 * Incremental variant of readCurrentEntries. Reads only the members added
+	 * since the high-water mark, and looks for removals in the recent
+	 * categorization changes. Known members are mapped to null, as the
+	 * timestamp is only needed for new entries. That includes members without
+	 * entry, which aren't walked again unless they were added again.
+	 * 
+	 * @return null if the result doesn't add up to the size of the category
+	 */
+	private Map<String, OffsetDateTime> readChangedEntries(
+			MaintenanceCategory category, EntryStore.Snapshot state)
+			throws IOException {
+		String catName = "Wikipedia:" + category.getName();
+		OffsetDateTime since = state.highWaterMark;
+		Map<String, OffsetDateTime> result = new HashMap<>();
+		for (String title : state.entries.keySet()) {
+			result.put(title, null);
+		}
+		for (String title : state.unlisted) {
+			result.put(title, null);
+		}
+		List<CategoryMember> added = wiki.getCategoryMembers(catName, since, 0);
+		for (CategoryMember member : added) {
 			result.put(member.getTitle(), member.getTimestamp());
 		}
+		int size = categorySize(category) - state.otherMembers;
+		if (result.size() != size) {
+			// Something was removed. The categorization changes name the
+			// page in their (localized) summary, check those pages.
+			String catTitle = wiki.normalize(wiki
+					.namespaceIdentifier(Wiki.CATEGORY_NAMESPACE)
+					+ ":"
+					+ catName);
+			Set<String> candidates = new TreeSet<>();
+			for (Revision change : wiki.categorizationChanges(wiki.new RequestHelper()
+					.byTitle(catTitle).withinDateRange(since, null))) {
+				String title = linkTarget(change.getComment());
+				if (null != title && result.containsKey(title)) {
+					candidates.add(title);
+				}
+			}
+			List<String> titles = new ArrayList<>(candidates);
+			List<List<String>> categories = wiki.getCategories(titles, null,
+					false);
+			for (int i = 0; i < titles.size(); i++) {
+				if (!categories.get(i).contains(catTitle)) {
+					result.remove(titles.get(i));
+				}
+			}
+		}
+		if (result.size() != size) {
+			logger.info("Changes don't add up, reading all members. cat="
+					+ category.getName());
+			return null;
+		}
+		for (CategoryMember member : added) {
+			raiseHighWaterMark(state, member.getTimestamp());
+		}
 		return result;
 	}
 
-	private void writeMaintenanceInfo(MaintenanceCategory category,
-			Map<String, Revision> entries, CategoryStatistics stats,
-			StringBuilder overview) throws LoginException, IOException {
+	private static final Pattern LINK = Pattern.compile("\\[\\[:?([^\\]|#]+)");
+
+	/**
+	 * @return the normalized target of the first link in the text, or null
+	 */
+	private String linkTarget(String text) {
+		if (null == text) {
+			return null;
+		}
+		Matcher matcher = LINK.matcher(text);
+		if (!matcher.find()) {
+			return null;
+		}
+		try {
+			return wiki.normalize(matcher.group(1));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return number of pages in the category, without files and
+	 *         subcategories
+	 */
+	private int categorySize(MaintenanceCategory category) throws IOException {
+		return wiki.getCategoryMemberCounts(
+				Collections.singletonList("Wikipedia:" + category.getName()))
+				.get(0)[1];
+	}
+
+	private static void raiseHighWaterMark(EntryStore.Snapshot state,
+			OffsetDateTime timestamp) {
+		if (null == state.highWaterMark
+				|| timestamp.isAfter(state.highWaterMark)) {
+			state.highWaterMark = timestamp;
+		}
+	}
+
+	/**
+	 * Cuts the list into pages of at most {@link #listPageBytes}, starting
+	 * from the pages of the last run, and writes them. Pages no longer used
+	 * are emptied, and forgotten once they are empty.
+	 * 
+	 * @param state
+	 *            list pages and their content hashes, updated for the pages
+	 *            edited and forgotten
+	 * @return the edits of the list pages actually changed, by title
+	 */
+	private Map<String, CompletableFuture<Long>> writeMaintenanceInfo(
+			MaintenanceCategory category, Map<String, Revision> entries,
+			CategoryStatistics stats, EntryStore.Snapshot state,
+			StringBuilder overview) throws IOException {
+		Map<String, ListEdit> changed = new LinkedHashMap<>();
 		String catName = category.getName();
 		String listName = tablePrefix + "/" + catName;
-		boolean split = category.isSplit();
+		// the pages written last time, unless emptied
+		String emptyHash = EntryStore.hash(buildText(Collections.emptyMap(),
+				true));
+		List<String> previous = new ArrayList<>();
+		for (String pageName : state.pageRevids.keySet()) {
+			String hash = state.pageHashes.get(pageName);
+			if (pageName.startsWith(listName + "/") && null != hash
+					&& !hash.equals(EMPTY_HASH) && !hash.equals(emptyHash)) {
+				previous.add(pageName.substring(listName.length() + 1));
+			}
+		}
+		List<ListSharding.Shard> shards = newSharding().shard(entries,
+				category.isSplit(), previous);
+		boolean split = shards.isEmpty() || null != shards.get(0).label;
 		
 		stats.writeOverviewEntryPart1(overview, split);
 		
@@ -180,28 +624,96 @@ public class MaintenanceBot {
 			if (null != entriesByYear) {
 				Map<String, Revision> subEntries = entriesByYear.get(year);
 				if (subEntries.size() > 0) {
-					writeOverviewSubentry(overview, subEntries, year, category);
+					writeOverviewSubentry(overview, subEntries, year, shards,
+							category);
 				}
-				String listNameSplit = listName + "/" + year;
-				writeMaintenanceInfo(listNameSplit, subEntries, split, stats);
 			}
 		}
-		if (!split) {
-			writeMaintenanceInfo(listName, entries, split, stats);
+		Set<String> pageNames = new HashSet<>();
+		for (ListSharding.Shard shard : shards) {
+			String pageName = split ? listName + "/" + shard.label : listName;
+			pageNames.add(pageName);
+			ListEdit edit = writeMaintenanceInfo(pageName, shard.entries,
+					split, stats, state.pageHashes);
+			if (null != edit) {
+				changed.put(pageName, edit);
+			}
+		}
+		for (String pageName : new TreeSet<>(state.pageRevids.keySet())) {
+			if (pageNames.contains(pageName)) {
+				continue;
+			}
+			ListEdit edit = writeMaintenanceInfo(pageName,
+					Collections.emptyMap(), !pageName.equals(listName), stats,
+					state.pageHashes);
+			if (null != edit) {
+				changed.put(pageName, edit);
+			} else {
+				state.pageRevids.remove(pageName);
+				state.pageHashes.remove(pageName);
+			}
 		}
 		stats.writeOverviewEntryPart2(overview);
+
+		// Protection info for all pages in one request, so each edit is a
+		// single request
+		Map<String, CompletableFuture<Long>> edits = new LinkedHashMap<>();
+		if (changed.isEmpty()) {
+			return edits;
+		}
+		List<String> titles = new ArrayList<>(changed.keySet());
+		List<Map<String, Object>> infos = wiki.getPageInfo(titles);
+		for (int i = 0; i < titles.size(); i++) {
+			ListEdit edit = changed.get(titles.get(i));
+			edits.put(titles.get(i), queueEdit(titles.get(i), edit.text,
+					edit.summary, infos.get(i)));
+		}
+		return edits;
+	}
+
+	/**
+	 * Stores the entries just written, together with the revision IDs of the
+	 * list pages they belong to. These are the revisions the bot saved, as
+	 * somebody else may edit right after.
+	 * 
+	 * @param edits
+	 *            the edits of the list pages, all done
+	 */
+	private void saveState(AnalyzedCategory result,
+			Map<String, CompletableFuture<Long>> edits) throws IOException {
+		for (Entry<String, CompletableFuture<Long>> edit : edits.entrySet()) {
+			result.state.pageRevids.put(edit.getKey(), edit.getValue().join());
+		}
+		store.save(result.category, result.state);
 	}
 
+	/**
+	 * Links the count of a year to the first page with entries of that year,
+	 * and further pages of the year by number.
+	 */
 	private void writeOverviewSubentry(StringBuilder overview,
 			Map<String, Revision> entries, Integer year,
-			MaintenanceCategory category) {
-		overview.append("[[/");
-		overview.append(category.getName());
-		overview.append("/");
-		overview.append(year);
-		overview.append("|");
-		overview.append(entries.size());
-		overview.append("]]");
+			List<ListSharding.Shard> shards, MaintenanceCategory category) {
+		int page = 0;
+		for (ListSharding.Shard shard : shards) {
+			if (!shard.covers(year)) {
+				continue;
+			}
+			page++;
+			if (page > 1) {
+				overview.append(" <sup>");
+			}
+			overview.append("[[/");
+			overview.append(category.getName());
+			overview.append("/");
+			overview.append(shard.label);
+			overview.append("|");
+			overview.append(page > 1 ? page : entries.size());
+			overview.append("]]");
+			if (page > 1) {
+				overview.append("</sup>");
+			}
+		}
 	}
 
 	private SortedMap<Integer, Map<String, Revision>> splitEntriesByYear(
@@ -224,29 +736,74 @@ public class MaintenanceBot {
 		return entriesByYear;
 	}
 
-	private void writeMaintenanceInfo(String listName,
+	/**
+	 * @return the edit to make, or null if the page is unchanged
+	 */
+	private ListEdit writeMaintenanceInfo(String listName,
 			Map<String, Revision> entries, boolean split,
-			CategoryStatistics stats) throws LoginException, IOException {
+			CategoryStatistics stats, Map<String, String> pageHashes) {
 		String text = buildText(entries, split);
-		String oldContent = listContents.remove(listName);
+		String oldHash = pageHashes.get(listName);
 		// Wenn Seite nicht existiert und keine Einträge vorhanden, dann
 		// Seite nicht anlegen
-		if ((oldContent == null || oldContent.length() == 0)
+		if ((oldHash == null || oldHash.equals(EMPTY_HASH))
 				&& entries.isEmpty()) {
-			return;
+			return null;
 		}
-		if (!text.equals(oldContent)) {
+		String hash = EntryStore.hash(text);
+		if (!hash.equals(oldHash)) {
+			// stored only once the edit is done, see saveState
+			pageHashes.put(listName, hash);
 			int subCount = entries.size();
 			String summary = stats.buildSummary(split, subCount);
-			wiki.edit(listName, text, summary);
+			return new ListEdit(text, summary);
+		}
+		return null;
+	}
+
+	/**
+	 * Waits for a free slot in the write queue, see {@link #writeSlots}.
+	 * 
+	 * @param info
+	 *            page info of the list page, for the protection check
+	 */
+	private CompletableFuture<Long> queueEdit(String title, String text,
+			String summary, Map<String, Object> info) throws IOException {
+		try {
+			writeSlots.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for writes", e);
 		}
+		CompletableFuture<Long> edit = wiki.editAsync(title, text, summary,
+				info);
+		edit.whenComplete((done, failure) -> writeSlots.release());
+		return edit;
+	}
+
+	/**
+	 * Sizes are taken for pages below the list page, whose lines are a little
+	 * longer, so a whole list that fits is sure to fit.
+	 */
+	private ListSharding newSharding() {
+		LineFormat format = new LineFormat();
+		int headerBytes = buildText(Collections.emptyMap(), true).getBytes(
+				StandardCharsets.UTF_8).length;
+		return new ListSharding(listPageBytes, headerBytes, entry -> {
+			String line = format.formatLine(entry, true);
+			return null == line ? 0
+					: line.getBytes(StandardCharsets.UTF_8).length;
+		}, currentYear);
 	}
 
 	private String buildText(Map<String, Revision> entries, boolean split) {
 		LineFormat format = new LineFormat();
 		Set<String> lines = new TreeSet<>();
 		for (Entry<String, Revision> entry : entries.entrySet()) {
-			format.formatLine(lines, entry, split);
+			String line = format.formatLine(entry, split);
+			if (null != line) {
+				lines.add(line);
+			}
 		}
 		StringBuilder b = new StringBuilder();
 		b.append(split ? "{{../../Intro}}\n" : "{{../Intro}}\n");
@@ -268,12 +825,16 @@ public class MaintenanceBot {
 			revisionFormat.setMinimumIntegerDigits(9);
 		}
 
-		private void formatLine(Set<String> lines,
-				Entry<String, Revision> entry, boolean split) {
+		/**
+		 * @return the line, or null if the entry has no revision
+		 */
+		private String formatLine(Entry<String, Revision> entry,
+				boolean split) {
 			String title = entry.getKey();
 			Revision revision = entry.getValue();
 			if (revision == null) {
 				logger.warning("null revision: " + title);
+				return null;
 			} else {
 				LocalDate date = revision.getTimestamp().toLocalDate();
 				Long revid = revision.getID();
@@ -289,40 +850,191 @@ public class MaintenanceBot {
 				b.append("|");
 				b.append(title);
 				b.append("}}\n");
-				String line = b.toString();
-				lines.add(line);
+				return b.toString();
 			}
 		}
 	}
 
-	private Map<String, Revision> readMaintenanceInfo(
-			MaintenanceCategory category) throws IOException {
-		Map<String, Revision> result = new HashMap<>();
-		String catName = category.getName();
-		if (category.isSplit()) {
-			for (int year = FIRST_YEAR; year <= currentYear; year++) {
-				readMaintenanceInfo(tablePrefix + "/" + catName + "/" + year,
-						result);
+	/**
+	 * Reads the entries of all categories from the local store, or, where it
+	 * is missing or the list pages were edited by someone else, from the list
+	 * pages. In the latter case there is no high-water mark. Page info and
+	 * page texts are requested for all categories at once, in as few requests
+	 * as possible.
+	 * 
+	 * The list pages of a category are those of the last run. Without a
+	 * stored state, they are looked up by prefix, as their names depend on
+	 * the sizes of the lists.
+	 */
+	private Map<MaintenanceCategory, EntryStore.Snapshot> readMaintenanceInfo(
+			List<MaintenanceCategory> categories) throws IOException {
+		Map<MaintenanceCategory, EntryStore.Snapshot> stored = new HashMap<>();
+		Map<MaintenanceCategory, List<String>> pageNamesByCategory = new HashMap<>();
+		List<String> pageNames = new ArrayList<>();
+		List<String> existing = null;
+		for (MaintenanceCategory category : categories) {
+			EntryStore.Snapshot snapshot = store.load(category);
+			List<String> names;
+			if (null != snapshot) {
+				names = new ArrayList<>(snapshot.pageRevids.keySet());
+			} else {
+				if (null == existing) {
+					// one listing for all categories
+					existing = wiki.prefixIndex(tablePrefix + "/");
+				}
+				names = listPageNames(category, existing);
+			}
+			stored.put(category, snapshot);
+			pageNamesByCategory.put(category, names);
+			pageNames.addAll(names);
+		}
+		List<Map<String, Object>> infos = wiki.getPageInfo(pageNames);
+		Map<String, Map<String, Object>> infoByPage = new HashMap<>();
+		for (int i = 0; i < pageNames.size(); i++) {
+			infoByPage.put(pageNames.get(i), infos.get(i));
+		}
+
+		Map<MaintenanceCategory, EntryStore.Snapshot> result = new HashMap<>();
+		Map<MaintenanceCategory, EntryStore.Snapshot> toParse = new HashMap<>();
+		List<String> toRead = new ArrayList<>();
+		for (MaintenanceCategory category : categories) {
+			Map<String, Long> listRevids = new HashMap<>();
+			for (String pageName : pageNamesByCategory.get(category)) {
+				listRevids.put(pageName, (Long) infoByPage.get(pageName).get(
+						"lastrevid"));
+			}
+			EntryStore.Snapshot snapshot = stored.get(category);
+			if (null != snapshot && snapshot.pageRevids.equals(listRevids)) {
+				// The pages still contain what buildText made of these entries
+				restoreListHashes(category, snapshot);
+				result.put(category, snapshot);
+				continue;
+			}
+			if (null != snapshot) {
+				logger.info("List pages changed since last run, reading them. cat="
+						+ category.getName());
+			}
+			snapshot = new EntryStore.Snapshot();
+			snapshot.pageRevids.putAll(listRevids);
+			result.put(category, snapshot);
+			toParse.put(category, snapshot);
+			for (Entry<String, Long> page : listRevids.entrySet()) {
+				if (page.getValue() > 0) {
+					toRead.add(page.getKey());
+				}
+			}
+		}
+
+		Map<String, String> texts = readPages(toRead, infoByPage);
+		for (Entry<MaintenanceCategory, EntryStore.Snapshot> category : toParse
+				.entrySet()) {
+			for (String pageName : pageNamesByCategory.get(category.getKey())) {
+				// Pages not read don't exist
+				String text = texts.getOrDefault(pageName, "");
+				category.getValue().pageHashes.put(pageName, EntryStore.hash(
+						text));
+				readMaintenanceInfo(text, category.getValue().entries);
 			}
-		} else {
-			readMaintenanceInfo(tablePrefix + "/" + catName, result);
 		}
 		return result;
 	}
 
-	private void readMaintenanceInfo(String pageName,
-			Map<String, Revision> result) throws IOException {
-		String text;
-		try {
-			text = wiki.getPageText(Collections.singletonList(pageName)).get(0);
+	/**
+	 * Reads existing pages in batches limited by count (done by Wiki) and by
+	 * size ({@link #MAX_READ_BYTES}).
+	 */
+	private Map<String, String> readPages(List<String> pageNames,
+			Map<String, Map<String, Object>> infoByPage) throws IOException {
+		Map<String, String> result = new HashMap<>();
+		List<String> batch = new ArrayList<>();
+		long batchSize = 0;
+		for (String pageName : pageNames) {
+			int size = (Integer) infoByPage.get(pageName).get("size");
+			if (!batch.isEmpty() && batchSize + size > MAX_READ_BYTES) {
+				readBatch(batch, result);
+				batch.clear();
+				batchSize = 0;
+			}
+			batch.add(pageName);
+			batchSize += size;
+		}
+		if (!batch.isEmpty()) {
+			readBatch(batch, result);
+		}
+		return result;
+	}
+
+	private void readBatch(List<String> pageNames, Map<String, String> result)
+			throws IOException {
+		List<String> texts = wiki.getPageText(pageNames);
+		for (int i = 0; i < pageNames.size(); i++) {
+			String pageName = pageNames.get(i);
+			String text = texts.get(i);
 			if (null == text) {
-				// The page does not exist
-				text = "";
+				// Existing page missing from a truncated result. Never treat
+				// that as an empty list, it would be written back empty.
+				text = wiki.getPageText(Collections.singletonList(pageName))
+						.get(0);
+				if (null == text) {
+					throw new IOException("Could not read list page "
+							+ pageName);
+				}
+			}
+			result.put(pageName, text);
+		}
+	}
+
+	/**
+	 * @param existing
+	 *            all pages below {@link #tablePrefix}
+	 * @return the list page of the category and the pages below it
+	 */
+	private List<String> listPageNames(MaintenanceCategory category,
+			List<String> existing) {
+		List<String> result = new ArrayList<>();
+		String listName = tablePrefix + "/" + category.getName();
+		for (String pageName : existing) {
+			if (pageName.equals(listName)
+					|| pageName.startsWith(listName + "/")) {
+				result.add(pageName);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Fills in the content hashes of a snapshot stored by an older version,
+	 * which had none.
+	 */
+	private void restoreListHashes(MaintenanceCategory category,
+			EntryStore.Snapshot snapshot) {
+		if (snapshot.pageHashes.keySet().containsAll(snapshot.pageRevids
+				.keySet())) {
+			return;
+		}
+		String listName = tablePrefix + "/" + category.getName();
+		if (category.isSplit()) {
+			SortedMap<Integer, Map<String, Revision>> entriesByYear = splitEntriesByYear(snapshot.entries);
+			for (Entry<Integer, Map<String, Revision>> year : entriesByYear
+					.entrySet()) {
+				restoreListHash(listName + "/" + year.getKey(),
+						year.getValue(), true, snapshot);
 			}
-		} catch (FileNotFoundException e1) {
-			text = "";
+		} else {
+			restoreListHash(listName, snapshot.entries, false, snapshot);
 		}
-		listContents.put(pageName, text);
+	}
+
+	private void restoreListHash(String pageName,
+			Map<String, Revision> entries, boolean split,
+			EntryStore.Snapshot snapshot) {
+		boolean exists = snapshot.pageRevids.getOrDefault(pageName, -1L) > 0;
+		snapshot.pageHashes.put(pageName, exists ? EntryStore.hash(buildText(
+				entries, split)) : EMPTY_HASH);
+	}
+
+	private void readMaintenanceInfo(String text,
+			Map<String, Revision> result) {
 		String[] lines = text.split("\n");
 		for (String line : lines) {
 			if ((line.startsWith("{{../z|") || line.startsWith("{{../../z|"))
@@ -348,58 +1060,6 @@ public class MaintenanceBot {
 		}
 	}
 
-	private Revision queryFirstRevisionWithTemplate(
-			final MaintenanceCategory cat, final String title, OffsetDateTime rvStart)
-			throws IOException, NoMaintenanceTemplateFoundException {
-		// for each handler invocation, the oldest revision containing the
-		// maintenance
-		// template
-		Revision revision1 = null;
-		String text1 = null;
-
-		// for each handler invocation, the oldest revision by the same
-		// author as the
-		// nearest older revision than revision 1.
-		Revision revision2 = null;
-
-		try (RevisionWalker walker = wiki.new RevisionWalker(title, rvStart)) {
-			while (walker.next()) {
-				String text = walker.text();
-				Revision revision = walker.revision();
-				if (cat.matches(text)) {
-					// Check if contributions between revision1 and
-					// revision2
-					// where reverted.
-					if (null != revision2 && !text.equals(text1)) {
-						// not reverted
-						break;
-					} else {
-						// current revision contains category
-						revision1 = revision;
-						text1 = text;
-						revision2 = null;
-					}
-				} else if (null == revision1) {
-					throw new NoMaintenanceTemplateFoundException(cat, title);
-				} else if (null == revision2) {
-					// remember this revision for revert check
-					revision2 = revision;
-				} else {
-					// perform revert check
-					String user2 = revision2.getUser();
-					String user = revision.getUser();
-					if (user.equals(user2)) {
-						// remember another revision for revert check
-						revision2 = revision;
-					} else {
-						break;
-					}
-				}
-			}
-		}
-		return revision1;
-	}
-
 	/**
 	 * Newest revision doesn't contain category. Possible causes:
 	 * <ul>
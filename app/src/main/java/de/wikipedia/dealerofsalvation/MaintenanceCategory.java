@@ -1,20 +1,21 @@
 package de.wikipedia.dealerofsalvation;
 
-import static java.lang.Character.toLowerCase;
-import static java.lang.Character.toUpperCase;
-import static java.util.regex.Pattern.DOTALL;
-
 import java.beans.XMLDecoder;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Set;
 
 public class MaintenanceCategory {
 
 	private static final String CONFIG_FILE = "cats.xml";
 
+	private static final String CATEGORY_NAMESPACE = "Kategorie:";
+
 	@SuppressWarnings("unchecked")
 	static List<MaintenanceCategory> getCategoriesFromConfigFile() {
 		try (FileInputStream in = new FileInputStream(CONFIG_FILE);
@@ -27,7 +28,21 @@ public class MaintenanceCategory {
 
 	private final String name;
 	private final boolean split;
-	private transient List<Pattern> patterns = new ArrayList<>();
+
+	/**
+	 * Normalized template names, matching any template whose name starts
+	 * with them up to a word boundary, like {@code \{\{\s*name\b}.
+	 */
+	private transient Set<String> templates = new HashSet<>();
+
+	/**
+	 * Normalized template name → first parameters, for templates that count
+	 * only with a certain parameter.
+	 */
+	private transient Map<String, Set<String>> templateParameters = new HashMap<>();
+
+	/** normalized, without namespace */
+	private transient String categoryLink;
 
 	// Wird zum XML-Deserialisieren aufgerufen.
 	public MaintenanceCategory(String name, boolean split,
@@ -35,48 +50,122 @@ public class MaintenanceCategory {
 		this(name, split, templates.toArray(new String[0]));
 	}
 
+	/**
+	 * @param templates
+	 *            template names. A name may be followed by the first
+	 *            parameter, in the regular expression syntax of earlier
+	 *            versions, e. g. {@code Staatslastig *\| *1=AT}.
+	 */
 	public MaintenanceCategory(String name, boolean split,
 			String... templates) {
 		this.name = name;
 		this.split = split;
 		for (String template : templates) {
-			patterns.add(toTemplatePattern(template));
-			// \s - "A whitespace character"
-			patterns.add(toTemplatePattern("Vorlage:\\s*"
-					+ toTitleRegexp(template)));
+			int bar = template.indexOf("\\|");
+			if (bar < 0) {
+				this.templates.add(WikitextScanner.normalize(template));
+				continue;
+			}
+			String templateName = WikitextScanner.normalize(template
+					.substring(0, bar).replace(" *", ""));
+			String parameter = template.substring(bar + 2).replace(" *", "")
+					.trim();
+			if (parameter.startsWith("1=")) {
+				parameter = parameter.substring(2);
+			}
+			templateParameters.computeIfAbsent(templateName,
+					k -> new HashSet<>()).add(parameter);
 		}
-		patterns.add(toCategoryPattern(name));
+		categoryLink = WikitextScanner.normalize("Wikipedia:" + name);
 	}
 
-	private Pattern toTemplatePattern(String template) {
-		template = toTitleRegexp(template);
-		String regexp = ".*\\{\\{\\s*" + template + "\\b.*\\}\\}.*";
-		// Result e. g.: .*\{\{[lL]ückenhaft\b.*\}\}.*
-		return Pattern.compile(regexp, DOTALL);
+	boolean matches(String text) {
+		return !matchAll(text, List.of(this)).isEmpty();
 	}
 
-	private Pattern toCategoryPattern(String cat) {
-		String regexp = ".*\\[\\[Kategorie:"
-				+ toTitleRegexp("Wikipedia:" + name) + "\\]\\].*";
-		return Pattern.compile(regexp, DOTALL);
+	/**
+	 * Like {@link #matches(String)} for several categories, scanning the text
+	 * only once.
+	 *
+	 * @return the categories whose template or category link is in the text
+	 */
+	static Set<MaintenanceCategory> matchAll(CharSequence text,
+			Collection<MaintenanceCategory> categories) {
+		Matcher matcher = new Matcher(categories);
+		matcher.scanner.feed(text);
+		return matcher.getResult();
 	}
 
-	private String toTitleRegexp(String s) {
-		char c = s.charAt(0);
-		char c1 = toUpperCase(c);
-		char c2 = toLowerCase(c);
-		s = "[" + c1 + c2 + "]" + s.substring(1);
-		// Wherever there is a whitestring, recognize underscore too
-		return s.replace(" ", "[ _]");
+	/**
+	 * {@link #matchAll} for text fed in chunks, e. g. straight from the XML
+	 * parser. Stops as soon as all categories are found.
+	 */
+	static class Matcher implements WikitextScanner.Handler {
+
+		private final Collection<MaintenanceCategory> categories;
+
+		private final Set<MaintenanceCategory> result = new HashSet<>();
+
+		private final WikitextScanner scanner = new WikitextScanner(this);
+
+		Matcher(Collection<MaintenanceCategory> categories) {
+			this.categories = categories;
+		}
+
+		/**
+		 * @return true if all categories are found, the rest of the text
+		 *         isn't needed
+		 */
+		boolean feed(char[] text, int start, int length) {
+			scanner.feed(text, start, length);
+			return scanner.isStopped();
+		}
+
+		/**
+		 * @return the categories found so far
+		 */
+		Set<MaintenanceCategory> getResult() {
+			return result;
+		}
+
+		@Override
+		public boolean template(String templateName, String firstParameter) {
+			for (MaintenanceCategory category : categories) {
+				if (category.matchesTemplate(templateName, firstParameter)) {
+					result.add(category);
+				}
+			}
+			return result.size() == categories.size();
+		}
+
+		@Override
+		public boolean link(String target) {
+			String category = WikitextScanner.withoutNamespace(target,
+					CATEGORY_NAMESPACE);
+			for (MaintenanceCategory candidate : categories) {
+				if (candidate.categoryLink.equals(category)) {
+					result.add(candidate);
+				}
+			}
+			return result.size() == categories.size();
+		}
 	}
 
-	boolean matches(String text) {
-		text = stripComments(text);
-		for (Pattern pattern : patterns) {
-			if (pattern.matcher(text).matches()) {
+	private boolean matchesTemplate(String templateName,
+			String firstParameter) {
+		for (String prefix : WikitextScanner.wordPrefixes(templateName)) {
+			if (templates.contains(prefix)) {
 				return true;
 			}
 		}
+		Set<String> parameters = templateParameters.get(templateName);
+		if (null != parameters && null != firstParameter) {
+			for (String prefix : WikitextScanner.wordPrefixes(firstParameter)) {
+				if (parameters.contains(prefix)) {
+					return true;
+				}
+			}
+		}
 		return false;
 	}
 
@@ -84,20 +173,10 @@ public class MaintenanceCategory {
 		return name;
 	}
 
-	private static String stripComments(String text) {
-		int i1;
-		while ((i1 = text.indexOf("<!--")) > -1) {
-			int i2 = text.indexOf("-->", i1);
-			String t1 = text.substring(0, i1);
-			if (i2 > -1) {
-				text = t1 + text.substring(i2 + 3);
-			} else {
-				text = t1;
-			}
-		}
-		return text;
-	}
-
+	/**
+	 * @return true if the list is cut by date even if it fits on one page,
+	 *         see {@link ListSharding}
+	 */
 	public final boolean isSplit() {
 		return split;
 	}
@@ -0,0 +1,316 @@
+package de.wikipedia.dealerofsalvation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds template invocations and links in wikitext in a single pass, skipping
+ * HTML comments. The text is fed character by character, so nothing but the
+ * names and first parameters found is copied, and the time is linear in the
+ * length of the text: names and parameters are read up to {@link #MAX_NAME}
+ * characters.
+ *
+ * Like the regular expressions used before ({@code \{\{\s*name\b.*\}\}}), a
+ * template counts as soon as a <code>}}</code> follows, not necessarily its
+ * own. Unlike them, a link target ends at '|' as well as at ']', so a
+ * category link with sort key counts, and a first parameter "1=CH" is the
+ * same as "CH", whitespace around it included. Comments are removed as by
+ * stripping them first: an unterminated comment swallows the rest of the
+ * text, and the text around a removed comment may form a new comment start.
+ */
+class WikitextScanner {
+
+	/** Receives what was found. Returning true stops the scan. */
+	interface Handler {
+		/**
+		 * @param name
+		 *            normalized, without "Vorlage:"
+		 * @param firstParameter
+		 *            trimmed, without "1=", or null
+		 */
+		boolean template(String name, String firstParameter);
+
+		/**
+		 * @param target
+		 *            normalized link target, e. g. "Kategorie:Wikipedia:Belege
+		 *            fehlen"
+		 */
+		boolean link(String target);
+	}
+
+	/** Titles are limited to 255 bytes, parameters we look at are short. */
+	static final int MAX_NAME = 256;
+
+	private static final String TEMPLATE_NAMESPACE = "Vorlage:";
+
+	private static final String COMMENT_START = "<!--";
+
+	private enum State {
+		TEXT, NAME, PARAMETER
+	}
+
+	private final Handler handler;
+
+	private boolean stopped;
+
+	// Comment filter: text without comments, not yet tokenized. That's the
+	// beginning of a possible comment start, and up to 3 characters before
+	// it, which may form another one once the comment is removed.
+	private final char[] held = new char[2 * COMMENT_START.length() - 1];
+	private int heldLength;
+	private boolean inComment;
+	// consecutive '-' in a comment, those of "<!--" included
+	private int dashes;
+
+	// Tokenizer:
+	private char previous;
+	private State template = State.TEXT;
+	private final StringBuilder name = new StringBuilder();
+	private String templateName;
+	private final StringBuilder parameter = new StringBuilder();
+	private boolean inLink;
+	private final StringBuilder link = new StringBuilder();
+	// templates waiting for a }} behind them
+	private final List<Invocation> pending = new ArrayList<>();
+
+	WikitextScanner(Handler handler) {
+		this.handler = handler;
+	}
+
+	/**
+	 * @return true if the handler stopped the scan
+	 */
+	static boolean scan(CharSequence text, Handler handler) {
+		WikitextScanner scanner = new WikitextScanner(handler);
+		scanner.feed(text);
+		return scanner.isStopped();
+	}
+
+	/**
+	 * @return true if the handler stopped the scan. Further input is ignored
+	 *         then.
+	 */
+	boolean isStopped() {
+		return stopped;
+	}
+
+	void feed(CharSequence text) {
+		for (int i = 0; i < text.length() && !stopped; i++) {
+			feed(text.charAt(i));
+		}
+	}
+
+	void feed(char[] text, int start, int length) {
+		for (int i = start; i < start + length && !stopped; i++) {
+			feed(text[i]);
+		}
+	}
+
+	/*
+	 * Characters held back at the end of the text can't complete anything,
+	 * they are '<', '!' and '-'. So there's no need to flush them.
+	 */
+	private void feed(char c) {
+		if (inComment) {
+			if (c == '>' && dashes >= 2) {
+				inComment = false;
+			} else {
+				dashes = (c == '-') ? dashes + 1 : 0;
+			}
+			return;
+		}
+		held[heldLength++] = c;
+		int candidate = commentStartPrefix();
+		if (candidate == COMMENT_START.length()) {
+			heldLength -= candidate;
+			inComment = true;
+			dashes = 2;
+			return;
+		}
+		int keep = (candidate == 0) ? 0 : candidate + COMMENT_START.length()
+				- 1;
+		int release = heldLength - keep;
+		if (release > 0) {
+			for (int i = 0; i < release; i++) {
+				token(held[i]);
+			}
+			System.arraycopy(held, release, held, 0, keep);
+			heldLength = keep;
+		}
+	}
+
+	/**
+	 * @return length of the longest end of the held text that is a beginning
+	 *         of {@link #COMMENT_START}
+	 */
+	private int commentStartPrefix() {
+		candidates: for (int length = Math.min(heldLength,
+				COMMENT_START.length()); length > 0; length--) {
+			for (int i = 0; i < length; i++) {
+				if (held[heldLength - length + i] != COMMENT_START.charAt(i)) {
+					continue candidates;
+				}
+			}
+			return length;
+		}
+		return 0;
+	}
+
+	private void token(char c) {
+		if (stopped) {
+			return;
+		}
+		switch (template) {
+		case NAME:
+			if (c == '|' || c == '}' || c == '{') {
+				completeName(c);
+			} else {
+				name.append(c);
+				if (name.length() == MAX_NAME) {
+					pending.add(new Invocation(normalize(name), null));
+					template = State.TEXT;
+				}
+			}
+			break;
+		case PARAMETER:
+			if (c == '|' || c == '}' || c == '{') {
+				completeParameter();
+			} else {
+				parameter.append(c);
+				if (parameter.length() == MAX_NAME) {
+					completeParameter();
+				}
+			}
+			break;
+		default:
+		}
+		if (inLink) {
+			if (c == '|' || c == ']') {
+				inLink = false;
+				if (handler.link(normalize(link))) {
+					stopped = true;
+					return;
+				}
+			} else if (c == '[' || link.length() == MAX_NAME) {
+				inLink = false;
+			} else {
+				link.append(c);
+			}
+		}
+		if (c == previous) {
+			if (c == '{') {
+				name.setLength(0);
+				template = State.NAME;
+			} else if (c == '}') {
+				for (Invocation invocation : pending) {
+					if (handler.template(invocation.name,
+							invocation.firstParameter)) {
+						stopped = true;
+						return;
+					}
+				}
+				pending.clear();
+			} else if (c == '[') {
+				link.setLength(0);
+				inLink = true;
+			}
+		}
+		previous = c;
+	}
+
+	private void completeName(char c) {
+		String normalized = normalize(name);
+		String withoutNamespace = withoutNamespace(normalized,
+				TEMPLATE_NAMESPACE);
+		if (null != withoutNamespace) {
+			normalized = withoutNamespace;
+		}
+		if (normalized.isEmpty()) {
+			template = State.TEXT;
+		} else if (c == '|') {
+			templateName = normalized;
+			parameter.setLength(0);
+			template = State.PARAMETER;
+		} else {
+			pending.add(new Invocation(normalized, null));
+			template = State.TEXT;
+		}
+	}
+
+	private void completeParameter() {
+		String firstParameter = parameter.toString().trim();
+		if (firstParameter.startsWith("1=")) {
+			firstParameter = firstParameter.substring(2).trim();
+		}
+		pending.add(new Invocation(templateName, firstParameter));
+		template = State.TEXT;
+	}
+
+	/**
+	 * Underscores and runs of whitespace become a single space, the first
+	 * letter is capitalized, as in MediaWiki titles.
+	 */
+	static String normalize(CharSequence title) {
+		StringBuilder result = new StringBuilder(title.length());
+		boolean space = false;
+		for (int i = 0; i < title.length(); i++) {
+			char c = title.charAt(i);
+			if (c == '_' || Character.isWhitespace(c)) {
+				space = result.length() > 0;
+			} else {
+				if (space) {
+					result.append(' ');
+					space = false;
+				}
+				result.append(result.length() == 0 ? Character.toUpperCase(c)
+						: c);
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * @param title
+	 *            normalized
+	 * @param namespace
+	 *            e. g. "Kategorie:"
+	 * @return the normalized title without the namespace, or null if it's in
+	 *         another namespace
+	 */
+	static String withoutNamespace(String title, String namespace) {
+		if (!title.startsWith(namespace)) {
+			return null;
+		}
+		return normalize(title.substring(namespace.length()));
+	}
+
+	/**
+	 * @return the given string and each prefix of it that ends at a word
+	 *         boundary, like {@code \b} in a regular expression, longest
+	 *         first
+	 */
+	static List<String> wordPrefixes(String s) {
+		List<String> result = new ArrayList<>();
+		for (int i = s.length(); i > 0; i--) {
+			if (i == s.length()
+					|| (isWordChar(s.charAt(i - 1)) && !isWordChar(s.charAt(i)))) {
+				result.add(s.substring(0, i));
+			}
+		}
+		return result;
+	}
+
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+
+	private static class Invocation {
+		final String name;
+		final String firstParameter;
+
+		Invocation(String name, String firstParameter) {
+			this.name = name;
+			this.firstParameter = firstParameter;
+		}
+	}
+}
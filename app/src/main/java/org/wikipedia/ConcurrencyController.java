@@ -0,0 +1,234 @@
+package org.wikipedia;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of API requests in flight, shared by all threads using a
+ * {@link Wiki}. The limit grows additively while responses come back in time
+ * and is halved when the server signals overload (database lag above maxlag,
+ * HTTP 429, ratelimited). Overload also pauses all requests for the time the
+ * server asks for, instead of just the thread that got the answer.
+ *
+ * A request holds its permit until the response headers arrive, so streamed
+ * bodies read at the consumer's pace don't block other requests. A response
+ * counts as in time unless it takes more than {@link #LATENCY_TOLERANCE}
+ * times the moving average, which follows the mix of queries sent.
+ *
+ * Thread safe.
+ *
+ * @see Wiki#setConcurrencyController(ConcurrencyController)
+ */
+public class ConcurrencyController {
+
+	static final double LATENCY_TOLERANCE = 3;
+
+	private static final double LATENCY_WEIGHT = 0.1;
+
+	private final int maxLimit;
+
+	private double limit;
+
+	private int inFlight;
+
+	/** System.nanoTime() until which no request is started */
+	private long pausedUntil;
+
+	private boolean paused;
+
+	private boolean wakeupScheduled;
+
+	private double averageLatency = -1;
+
+	private final Queue<CompletableFuture<Long>> waiting = new ArrayDeque<>();
+
+	private long backOffs;
+
+	/**
+	 * @param initialLimit
+	 *            requests in flight at first
+	 * @param maxLimit
+	 *            requests in flight at most
+	 */
+	public ConcurrencyController(int initialLimit, int maxLimit) {
+		if (initialLimit < 1 || maxLimit < initialLimit) {
+			throw new IllegalArgumentException("Invalid limits "
+					+ initialLimit + ", " + maxLimit);
+		}
+		this.limit = initialLimit;
+		this.maxLimit = maxLimit;
+	}
+
+	/**
+	 * Waits for a permit to send a request.
+	 *
+	 * @return the start of the request, to be passed to
+	 *         {@link #release(long, boolean)}
+	 */
+	public long acquire() throws InterruptedException {
+		CompletableFuture<Long> permit = acquireAsync();
+		try {
+			return permit.get();
+		} catch (InterruptedException e) {
+			if (!permit.cancel(false)) {
+				release(permit.join(), false);
+			}
+			throw e;
+		} catch (ExecutionException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * @return completed with the start of the request when a permit is free,
+	 *         see {@link #acquire()}. Cancelling it gives up waiting.
+	 */
+	public CompletableFuture<Long> acquireAsync() {
+		CompletableFuture<Long> permit = new CompletableFuture<>();
+		synchronized (this) {
+			waiting.add(permit);
+		}
+		dispatch();
+		return permit;
+	}
+
+	/**
+	 * Returns a permit once the response (headers) arrived or the request
+	 * failed.
+	 *
+	 * @param start
+	 *            as returned by {@link #acquire()}
+	 * @param answered
+	 *            true if the server answered normally, false after errors and
+	 *            overload, which don't count for the latency
+	 */
+	public void release(long start, boolean answered) {
+		long latency = System.nanoTime() - start;
+		synchronized (this) {
+			if (answered) {
+				boolean inTime = averageLatency < 0
+						|| latency <= LATENCY_TOLERANCE * averageLatency;
+				averageLatency = averageLatency < 0 ? latency
+						: averageLatency + LATENCY_WEIGHT
+								* (latency - averageLatency);
+				// grow only if the limit is what holds requests back
+				if (inTime && inFlight >= (int) limit) {
+					limit = Math.min(maxLimit, limit + 1 / limit);
+				}
+			}
+			inFlight--;
+		}
+		dispatch();
+	}
+
+	/**
+	 * The server is overloaded: halves the limit and pauses all requests. The
+	 * limit is halved once per pause, as the other requests in flight at the
+	 * time will probably report the same.
+	 *
+	 * @param seconds
+	 *            the time to wait, e. g. from a Retry-After header
+	 */
+	public void backOff(long seconds) {
+		synchronized (this) {
+			if (!isPaused()) {
+				limit = Math.max(1, limit / 2);
+				backOffs++;
+			}
+			pauseNanos(TimeUnit.SECONDS.toNanos(seconds));
+		}
+		dispatch();
+	}
+
+	/**
+	 * Pauses all requests without changing the limit, e. g. while the
+	 * database is locked.
+	 *
+	 * @param seconds
+	 *            the time to wait
+	 */
+	public void pause(long seconds) {
+		synchronized (this) {
+			pauseNanos(TimeUnit.SECONDS.toNanos(seconds));
+		}
+		dispatch();
+	}
+
+	private void pauseNanos(long nanos) {
+		long until = System.nanoTime() + nanos;
+		if (!isPaused() || until - pausedUntil > 0) {
+			pausedUntil = until;
+		}
+		paused = true;
+	}
+
+	private boolean isPaused() {
+		if (paused && System.nanoTime() - pausedUntil >= 0) {
+			paused = false;
+		}
+		return paused;
+	}
+
+	/**
+	 * Hands out free permits. Futures are completed outside the lock, as
+	 * their dependents may send the request right away.
+	 */
+	private void dispatch() {
+		List<CompletableFuture<Long>> granted = new ArrayList<>();
+		synchronized (this) {
+			if (isPaused()) {
+				if (!waiting.isEmpty() && !wakeupScheduled) {
+					wakeupScheduled = true;
+					CompletableFuture.delayedExecutor(
+							pausedUntil - System.nanoTime(),
+							TimeUnit.NANOSECONDS).execute(this::wakeUp);
+				}
+				return;
+			}
+			while (inFlight < (int) limit && !waiting.isEmpty()) {
+				CompletableFuture<Long> permit = waiting.poll();
+				if (!permit.isDone()) {
+					inFlight++;
+					granted.add(permit);
+				}
+			}
+		}
+		for (CompletableFuture<Long> permit : granted) {
+			long start = System.nanoTime();
+			if (!permit.complete(start)) {
+				// cancelled meanwhile
+				release(start, false);
+			}
+		}
+	}
+
+	private void wakeUp() {
+		synchronized (this) {
+			wakeupScheduled = false;
+		}
+		dispatch();
+	}
+
+	public synchronized double getLimit() {
+		return limit;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	public synchronized long getBackOffs() {
+		return backOffs;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("ConcurrencyController[limit=%.1f, inFlight=%d, "
+				+ "backOffs=%d]", limit, inFlight, backOffs);
+	}
+}
@@ -0,0 +1,208 @@
+package org.wikipedia;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Revision contents by revid. The content of a revision never changes, so
+ * entries don't expire. Recently used contents are kept in memory up to a
+ * total number of characters, all contents are kept gzipped on disk, one file
+ * per revision, if a directory is given.
+ *
+ * Thread safe. Disk errors are logged and count as misses, the content is
+ * read from the wiki then.
+ *
+ * @see Wiki#setRevisionTextCache(RevisionTextCache)
+ */
+public class RevisionTextCache {
+
+	private static final Logger logger = Logger
+			.getLogger(RevisionTextCache.class.getName());
+
+	private static final String SUFFIX = ".gz";
+
+	private final long maxChars;
+
+	private final Path directory;
+
+	/** in access order, least recently used first */
+	private final LinkedHashMap<Long, String> memory = new LinkedHashMap<>(16,
+			0.75f, true);
+
+	private long chars;
+
+	private final AtomicLong memoryHits = new AtomicLong();
+
+	private final AtomicLong diskHits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param maxChars
+	 *            total length of the contents kept in memory
+	 * @param directory
+	 *            where the contents are stored, or null for memory only
+	 */
+	public RevisionTextCache(long maxChars, Path directory) {
+		this.maxChars = maxChars;
+		this.directory = directory;
+	}
+
+	/**
+	 * @return the content, or null if it isn't cached
+	 */
+	public String get(long revid) {
+		String text;
+		synchronized (this) {
+			text = memory.get(revid);
+		}
+		if (null != text) {
+			memoryHits.incrementAndGet();
+			return text;
+		}
+		text = readFile(revid);
+		if (null == text) {
+			misses.incrementAndGet();
+			return null;
+		}
+		diskHits.incrementAndGet();
+		remember(revid, text);
+		return text;
+	}
+
+	/**
+	 * @return true if {@link #get(long)} will probably find the content. Not
+	 *         counted as hit or miss.
+	 */
+	public boolean contains(long revid) {
+		synchronized (this) {
+			if (memory.containsKey(revid)) {
+				return true;
+			}
+		}
+		return null != directory && Files.exists(file(revid));
+	}
+
+	/**
+	 * @param text
+	 *            the content of the revision. Null (missing or hidden) is
+	 *            ignored.
+	 */
+	public void put(long revid, String text) {
+		if (null == text) {
+			return;
+		}
+		synchronized (this) {
+			if (memory.containsKey(revid)) {
+				return;
+			}
+		}
+		remember(revid, text);
+		writeFile(revid, text);
+	}
+
+	public long getMemoryHits() {
+		return memoryHits.get();
+	}
+
+	public long getDiskHits() {
+		return diskHits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	@Override
+	public String toString() {
+		return "RevisionTextCache[memoryHits=" + getMemoryHits()
+				+ ", diskHits=" + getDiskHits() + ", misses=" + getMisses()
+				+ "]";
+	}
+
+	private synchronized void remember(long revid, String text) {
+		if (text.length() > maxChars) {
+			return;
+		}
+		String old = memory.put(revid, text);
+		if (null != old) {
+			chars -= old.length();
+		}
+		chars += text.length();
+		Iterator<String> eldest = memory.values().iterator();
+		while (chars > maxChars) {
+			chars -= eldest.next().length();
+			eldest.remove();
+		}
+	}
+
+	/** Spread over 1000 subdirectories to keep directories small */
+	private Path file(long revid) {
+		return directory.resolve(String.format("%03d", revid % 1000)).resolve(
+				revid + SUFFIX);
+	}
+
+	private String readFile(long revid) {
+		if (null == directory) {
+			return null;
+		}
+		try (InputStream in = new GZIPInputStream(Files.newInputStream(file(
+				revid)))) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Reading cached revision " + revid
+					+ " failed", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Writes to a temporary file first, so concurrent readers and an
+	 * interrupted run never see a partial file.
+	 */
+	private void writeFile(long revid, String text) {
+		if (null == directory) {
+			return;
+		}
+		Path file = file(revid);
+		if (Files.exists(file)) {
+			return;
+		}
+		Path temp = null;
+		try {
+			Files.createDirectories(file.getParent());
+			temp = Files.createTempFile(file.getParent(), revid + "-", ".tmp");
+			try (OutputStream out = new GZIPOutputStream(Files
+					.newOutputStream(temp))) {
+				out.write(text.getBytes(StandardCharsets.UTF_8));
+			}
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			logger.log(Level.WARNING, "Caching revision " + revid + " failed",
+					e);
+			if (null != temp) {
+				try {
+					Files.deleteIfExists(temp);
+				} catch (IOException e2) {
+					// nothing left to do
+				}
+			}
+		}
+	}
+}
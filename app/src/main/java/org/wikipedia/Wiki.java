@@ -452,6 +452,25 @@ public class Wiki implements Comparable<Wiki>
     private List<String> extensions = Collections.emptyList();
     private LinkedHashMap<String, Integer> namespaces = null;
     private ArrayList<Integer> ns_subpages = null;
+    private static final int NORMALIZE_CACHE_SIZE = 10000;
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+    /**
+     *  Bytes at the start of a response searched for errors that are retried,
+     *  see {@link #peek(InputStream)}.
+     */
+    private static final int PEEK_BYTES = 1024;
+    // lookups built from namespaces once getSiteInfo has filled it
+    private volatile Map<String, Integer> namespaceindex = null;
+    private volatile Map<Integer, String> namespaceidentifiers = null;
+    private final Map<String, String> normalizedtitles = new LinkedHashMap<>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+        {
+            return size() > NORMALIZE_CACHE_SIZE;
+        }
+    };
 
     // user management
     private HttpClient client;
@@ -474,11 +493,18 @@ public class Wiki implements Comparable<Wiki>
     private boolean zipped = true;
     private boolean markminor = false, markbot = false;
     private boolean resolveredirect = false;
+    private RevisionTextCache revisiontextcache = null;
+    private ConcurrencyController concurrency = new ConcurrencyController(2, 16);
     private Level loglevel = Level.ALL;
     private static final Logger logger = Logger.getLogger("wiki");
 
     // Store time when the last throttled action was executed
     private long lastThrottleActionTime = 0;
+    private final Object throttlelock = new Object();
+    // CSRF token of this session, see getCsrfToken()
+    private volatile String csrftoken = null;
+    // runs scheduled writes one after the other, created on first use
+    private ExecutorService writer = null;
 
     // config via properties
     private final int maxtries;
@@ -531,6 +557,7 @@ public class Wiki implements Comparable<Wiki>
         read_timeout_msec = Integer.parseInt(props.getProperty("readtimeout", "180000")); // 180 seconds
         cookies = new CookieManager(null, CookiePolicy.ACCEPT_ALL);
         client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
             .connectTimeout(Duration.ofSeconds(30))
             .cookieHandler(cookies)
             .build();
@@ -780,6 +807,12 @@ public class Wiki implements Comparable<Wiki>
                 extensions.add(parseAttribute(unparsed[i], "name", 0));
 
             // populate namespace cache
+            namespaceindex = null;
+            namespaceidentifiers = null;
+            synchronized (normalizedtitles)
+            {
+                normalizedtitles.clear();
+            }
             namespaces = new LinkedHashMap<>(30);
             ns_subpages = new ArrayList<>(30);
             // xml form: <ns id="-2" canonical="Media" ... >Media</ns> or <ns id="0" ... />
@@ -806,6 +839,7 @@ public class Wiki implements Comparable<Wiki>
                 if (items[i].contains("subpages=\"\""))
                     ns_subpages.add(ns);
             }
+            indexNamespaces();
             siteinfofetched = true;
             log(Level.INFO, "getSiteInfo", "Successfully retrieved site info for " + getDomain());
         }
@@ -964,6 +998,48 @@ public class Wiki implements Comparable<Wiki>
             defaultApiParams.remove("redirects");
     }
 
+    /**
+     *  Gets the cache for revision contents, see {@link
+     *  #setRevisionTextCache(RevisionTextCache)}.
+     *  @return (see above), or null if there is none
+     */
+    public RevisionTextCache getRevisionTextCache()
+    {
+        return revisiontextcache;
+    }
+
+    /**
+     *  Sets a cache for revision contents (default = null). Contents requested
+     *  by revid, by {@link Revision#getText()} and by {@link RevisionWalker}
+     *  are looked up in and added to it.
+     *  @param cache the cache, or null to always read from the wiki
+     */
+    public void setRevisionTextCache(RevisionTextCache cache)
+    {
+        revisiontextcache = cache;
+    }
+
+    /**
+     *  Gets the controller limiting the API requests in flight, see {@link
+     *  #setConcurrencyController(ConcurrencyController)}.
+     *  @return (see above)
+     */
+    public ConcurrencyController getConcurrencyController()
+    {
+        return concurrency;
+    }
+
+    /**
+     *  Sets the controller limiting the API requests in flight from all
+     *  threads (default = 2 growing up to 16). It also makes all requests wait
+     *  when the server reports lag or throttles us.
+     *  @param controller the controller
+     */
+    public void setConcurrencyController(ConcurrencyController controller)
+    {
+        concurrency = Objects.requireNonNull(controller);
+    }
+
     /**
      *  Sets whether edits are marked as bot by default (may be overridden).
      *  Default = false. Works only if one has the required permissions.
@@ -1214,6 +1290,7 @@ public class Wiki implements Comparable<Wiki>
                 max = 5000;
                 slowmax = 500;
             }
+            csrftoken = null;
             log(Level.INFO, "login", "Successfully logged in as " + username + ", highLimit = " + apihighlimit);
         }
         else if (line.contains("result=\"Failed\""))
@@ -1252,6 +1329,7 @@ public class Wiki implements Comparable<Wiki>
     {
         cookies.getCookieStore().removeAll();
         user = null;
+        csrftoken = null;
         max = 500;
         slowmax = 50;
         log(Level.INFO, "logout", "Logged out");
@@ -1535,6 +1613,24 @@ public class Wiki implements Comparable<Wiki>
         return parseAttribute(content, type + "token", 0);
     }
 
+    /**
+     *  Gets the CSRF token for write actions. It stays valid for the session,
+     *  so it is fetched once and kept until login, logout or a badtoken
+     *  error.
+     *  @return the token
+     *  @throws IOException if a network error occurs
+     */
+    private String getCsrfToken() throws IOException
+    {
+        String token = csrftoken;
+        if (token == null)
+        {
+            token = getToken("csrf");
+            csrftoken = token;
+        }
+        return token;
+    }
+
     // PAGE METHODS
 
     /**
@@ -1734,27 +1830,30 @@ public class Wiki implements Comparable<Wiki>
             // form: <page pageid="239098" ns="0" title="BitTorrent" ... >
             // <protection />
             // </page>
+            XmlAttributes attributes = new XmlAttributes();
+            XmlAttributes pr = new XmlAttributes();
             for (int j = line.indexOf("<page "); j > 0; j = line.indexOf("<page ", ++j))
             {
                 int x = Math.max(line.indexOf("</page>", j), line.indexOf(" />", j));
                 String item = line.substring(j, x);
+                attributes.parse(item, 0);
                 Map<String, Object> tempmap = new HashMap<>(15);
 
                 // skip Special, Media and invalid titles
-                if (item.contains("special=\"\"") || item.contains("invalid=\"\""))
+                if (attributes.has("special") || attributes.has("invalid"))
                     continue;
                 
                 // does the page exist?
-                String parsedtitle = parseAttribute(item, "title", 0);
+                String parsedtitle = attributes.get("title");
                 tempmap.put("pagename", parsedtitle);
-                boolean exists = !item.contains("missing=\"\"");
+                boolean exists = !attributes.has("missing");
                 tempmap.put("exists", exists);
                 if (exists)
                 {
-                    tempmap.put("lastpurged", OffsetDateTime.parse(parseAttribute(item, "touched", 0)));
-                    tempmap.put("lastrevid", Long.parseLong(parseAttribute(item, "lastrevid", 0)));
-                    tempmap.put("size", Integer.parseInt(parseAttribute(item, "length", 0)));
-                    tempmap.put("pageid", Long.parseLong(parseAttribute(item, "pageid", 0)));
+                    tempmap.put("lastpurged", OffsetDateTime.parse(attributes.get("touched")));
+                    tempmap.put("lastrevid", Long.parseLong(attributes.get("lastrevid")));
+                    tempmap.put("size", Integer.parseInt(attributes.get("length")));
+                    tempmap.put("pageid", Long.parseLong(attributes.get("pageid")));
                 }
                 else
                 {
@@ -1767,20 +1866,23 @@ public class Wiki implements Comparable<Wiki>
                 // parse protection level
                 // expected form: <pr type="edit" level="sysop" expiry="infinity" cascade="" />
                 Map<String, Object> protectionstate = new HashMap<>();
+                boolean cascade = false;
                 for (int z = item.indexOf("<pr "); z > 0; z = item.indexOf("<pr ", ++z))
                 {
-                    String type = parseAttribute(item, "type", z);
-                    String level = parseAttribute(item, "level", z);
+                    pr.parse(item, z);
+                    String type = pr.get("type");
+                    String level = pr.get("level");
                     protectionstate.put(type, level);
                     //if (level != NO_PROTECTION)
-                    String expiry = parseAttribute(item, "expiry", z);
+                    String expiry = pr.get("expiry");
                     if (expiry.equals("infinity"))
                         protectionstate.put(type + "expiry", null);
                     else
                         protectionstate.put(type + "expiry", OffsetDateTime.parse(expiry));
                     // protected via cascade
-                    if (item.contains("source=\""))
-                        protectionstate.put("cascadesource", parseAttribute(item, "source", z));
+                    if (pr.has("source"))
+                        protectionstate.put("cascadesource", pr.get("source"));
+                    cascade |= pr.has("cascade");
                 }
                 // MediaWiki namespace
                 if (namespace(parsedtitle) == MEDIAWIKI_NAMESPACE)
@@ -1791,16 +1893,16 @@ public class Wiki implements Comparable<Wiki>
                         protectionstate.put("create", FULL_PROTECTION);
                 }
 
-                protectionstate.put("cascade", item.contains("cascade=\"\""));
+                protectionstate.put("cascade", cascade);
                 tempmap.put("protection", protectionstate);
 
-                tempmap.put("displaytitle", parseAttribute(item, "displaytitle", 0));
+                tempmap.put("displaytitle", attributes.get("displaytitle"));
                 tempmap.put("timestamp", OffsetDateTime.now(timezone));
-                tempmap.put("redirect", item.contains("redirect=\"\""));
+                tempmap.put("redirect", attributes.has("redirect"));
 
                 // number of watchers
-                if (item.contains("watchers=\""))
-                    tempmap.put("watchers", Integer.parseInt(parseAttribute(item, "watchers", 0)));
+                if (attributes.has("watchers"))
+                    tempmap.put("watchers", Integer.parseInt(attributes.get("watchers")));
 
                 metamap.put(parsedtitle, tempmap);
             }
@@ -1900,6 +2002,22 @@ public class Wiki implements Comparable<Wiki>
         }
     }
 
+    /**
+     *  Builds the immutable lookups used by {@link #namespace(String)} and
+     *  {@link #namespaceIdentifier(int)} from the complete namespace cache.
+     *  The first name of a namespace is its localized name.
+     */
+    private void indexNamespaces()
+    {
+        Map<String, Integer> index = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        index.putAll(namespaces);
+        Map<Integer, String> identifiers = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : namespaces.entrySet())
+            identifiers.putIfAbsent(entry.getValue(), entry.getKey());
+        namespaceidentifiers = Collections.unmodifiableMap(identifiers);
+        namespaceindex = Collections.unmodifiableMap(index);
+    }
+
     /**
      *  Returns the namespace a page is in. There is no need to override this to
      *  add custom namespaces, though you may want to define static fields e.g.
@@ -1924,9 +2042,14 @@ public class Wiki implements Comparable<Wiki>
             return MAIN_NAMESPACE;
         title = title.replace("_", " ");
         String namespace = title.substring(0, title.indexOf(':'));
-        Map<String, Integer> tempmap = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-        tempmap.putAll(namespaces);
-        return tempmap.getOrDefault(namespace, MAIN_NAMESPACE);
+        Map<String, Integer> index = namespaceindex;
+        if (index == null)
+        {
+            // getSiteInfo is still filling the namespace cache
+            index = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            index.putAll(namespaces);
+        }
+        return index.getOrDefault(namespace, MAIN_NAMESPACE);
     }
 
     /**
@@ -1947,6 +2070,9 @@ public class Wiki implements Comparable<Wiki>
     public String namespaceIdentifier(int namespace)
     {
         ensureNamespaceCache();
+        Map<Integer, String> identifiers = namespaceidentifiers;
+        if (identifiers != null)
+            return identifiers.getOrDefault(namespace, "");
 
         // anything we cannot identify is assumed to be in the main namespace
         if (!namespaces.containsValue(namespace))
@@ -2041,6 +2167,55 @@ public class Wiki implements Comparable<Wiki>
      *  @since 0.35
      */
     public List<String> getText(List<String> titles, long[] revids, int section) throws IOException
+    {
+        if (titles == null && revids != null && section < 0 && revisiontextcache != null)
+            return getCachedText(revids);
+        return fetchText(titles, revids, section);
+    }
+
+    /**
+     *  Gets the wikitext of revisions from the revision text cache, reading
+     *  only those not in it from the wiki.
+     *  @param revids a list of revids
+     *  @return the raw wikicode of those revisions, in the same order as the
+     *  input array
+     *  @throws IOException or UncheckedIOException if a network error occurs
+     *  @see #getText(List, long[], int)
+     */
+    private List<String> getCachedText(long[] revids) throws IOException
+    {
+        String[] ret = new String[revids.length];
+        long[] missing = new long[revids.length];
+        int count = 0;
+        for (int i = 0; i < revids.length; i++)
+        {
+            ret[i] = revisiontextcache.get(revids[i]);
+            if (ret[i] == null)
+                missing[count++] = revids[i];
+        }
+        if (count > 0)
+        {
+            missing = Arrays.copyOf(missing, count);
+            List<String> fetched = fetchText(null, missing, -1);
+            Map<Long, String> texts = new HashMap<>(2 * count);
+            for (int i = 0; i < count; i++)
+            {
+                revisiontextcache.put(missing[i], fetched.get(i));
+                texts.put(missing[i], fetched.get(i));
+            }
+            for (int i = 0; i < revids.length; i++)
+                if (ret[i] == null)
+                    ret[i] = texts.get(revids[i]);
+        }
+        return Arrays.asList(ret);
+    }
+
+    /**
+     *  Reads the wikitext of a list of titles or revisions from the wiki,
+     *  bypassing the revision text cache.
+     *  @see #getText(List, long[], int)
+     */
+    private List<String> fetchText(List<String> titles, long[] revids, int section) throws IOException
     {
         // determine what type of request we have. Cannot mix the two.
         // FIXME: XML bleeding to return results for lists of pages
@@ -2075,13 +2250,15 @@ public class Wiki implements Comparable<Wiki>
         getparams.put("rvprop", "ids|content");
         if (section >= 0)
             getparams.put("rvsection", String.valueOf(section));
-        Map<String, Object> postparams = new HashMap<>();
 
+        // send all chunks at once, they are multiplexed over one connection
         List<String> chunks = isrevisions ? constructRevisionString(revids) : constructTitleString(titles);
+        List<CompletableFuture<String>> responses = new ArrayList<>();
         for (String chunk : chunks)
+            responses.add(makeApiCallAsync(getparams, Map.of(isrevisions ? "revids" : "titles", chunk), "getText"));
+        for (CompletableFuture<String> response : responses)
         {
-            postparams.put(isrevisions ? "revids" : "titles", chunk);
-            String temp = makeApiCall(getparams, postparams, "getText");
+            String temp = await(response);
             detectUncheckedErrors(temp, null, Map.of("nosuchsection", desc -> {}));
             String[] results = temp.split(isrevisions ? "<rev " : "<page ");
             if (!isrevisions)
@@ -2293,13 +2470,35 @@ public class Wiki implements Comparable<Wiki>
      *  @see #getPageText
      *  @since 0.17
      */
-    public synchronized void edit(String title, String text, String summary, boolean minor, boolean bot,
+    public void edit(String title, String text, String summary, boolean minor, boolean bot,
         int section, OffsetDateTime basetime) throws IOException, LoginException
+    {
+        edit(title, text, summary, minor, bot, section, basetime, null);
+    }
+
+    /**
+     *  Edits a page by setting its text to the supplied value, see {@link
+     *  #edit(String, String, String, boolean, boolean, int, OffsetDateTime)}.
+     *  Protection is checked with page info fetched before, e.g. by one
+     *  {@link #getPageInfo(List)} call for all pages about to be written, so
+     *  the edit costs a single request.
+     *
+     *  @param pageinfo the output from {@link #getPageInfo} for the page, or
+     *  null to fetch it now
+     *  @return the ID of the revision saved, or of the latest revision in
+     *  <var>pageinfo</var> if the text was unchanged
+     *  @throws IOException if a network error occurs
+     *  @throws LoginException see {@link #edit(String, String, String,
+     *  boolean, boolean, int, OffsetDateTime)}
+     *  @since 0.38
+     */
+    public long edit(String title, String text, String summary, boolean minor, boolean bot,
+        int section, OffsetDateTime basetime, Map<String, Object> pageinfo) throws IOException, LoginException
     {
         throttle();
 
         // protection
-        Map<String, Object> info = getPageInfo(List.of(title)).get(0);
+        Map<String, Object> info = pageinfo != null ? pageinfo : getPageInfo(List.of(title)).get(0);
         if (!checkRights(info, "edit") || (Boolean)info.get("exists") && !checkRights(info, "create"))
         {
             CredentialException ex = new CredentialException("Permission denied: page is protected.");
@@ -2317,7 +2516,7 @@ public class Wiki implements Comparable<Wiki>
         // edit summary is created automatically if making a new section
         if (section != -1)
             postparams.put("summary", summary);
-        postparams.put("token", getToken("csrf"));
+        postparams.put("token", getCsrfToken());
         if (basetime != null)
         {
             postparams.put("starttimestamp", info.get("timestamp"));
@@ -2337,9 +2536,130 @@ public class Wiki implements Comparable<Wiki>
             postparams.put("section", section);
         
         String response = makeApiCall(getparams, postparams, "edit");
+        if (response.contains("<error code=\"badtoken\""))
+        {
+            // the session changed, try once more with a fresh token
+            csrftoken = null;
+            postparams.put("token", getCsrfToken());
+            response = makeApiCall(getparams, postparams, "edit");
+        }
         checkErrorsAndUpdateStatus(response, "edit", Map.of(
             "editconflict", desc -> new ConcurrentModificationException(desc + "- [[" + title + "]]")), null);
         log(Level.INFO, "edit", "Successfully edited " + title);
+        // <edit result="Success" ... oldrevid="1" newrevid="2" />, nochange="" instead
+        String newrevid = parseAttribute(response, "newrevid", 0);
+        if (newrevid != null)
+            return Long.parseLong(newrevid);
+        return info.get("lastrevid") instanceof Long ? (Long)info.get("lastrevid") : -1;
+    }
+
+    /**
+     *  Queues an edit and returns at once, see {@link #edit(String, String,
+     *  String)}. Scheduled writes run one after the other on a thread of
+     *  their own, {@linkplain #setThrottle(int) throttled} as usual, so the
+     *  caller can go on reading while they drain.
+     *
+     *  @param text the text of the page
+     *  @param title the title of the page
+     *  @param summary the edit summary
+     *  @return completed when the page is saved, or exceptionally with the
+     *  exception {@link #edit(String, String, String)} would have thrown
+     *  @see #scheduleWrite(WriteAction)
+     */
+    public CompletableFuture<Void> editAsync(String title, String text, String summary)
+    {
+        return scheduleWrite(() -> edit(title, text, summary));
+    }
+
+    /**
+     *  Queues an edit that uses page info fetched before, see {@link
+     *  #editAsync(String, String, String)} and {@link #edit(String, String,
+     *  String, boolean, boolean, int, OffsetDateTime, Map)}.
+     *
+     *  @param text the text of the page
+     *  @param title the title of the page
+     *  @param summary the edit summary
+     *  @param pageinfo the output from {@link #getPageInfo} for the page
+     *  @return completed with the ID of the revision saved when the page is
+     *  saved, see {@link #edit(String, String, String, boolean, boolean, int,
+     *  OffsetDateTime, Map)}, or exceptionally
+     */
+    public CompletableFuture<Long> editAsync(String title, String text, String summary, Map<String, Object> pageinfo)
+    {
+        return schedule(() -> edit(title, text, summary, markminor, markbot, -2, null, pageinfo));
+    }
+
+    /**
+     *  Queues a write action behind all writes scheduled before. They run on
+     *  a single thread of their own, so the rate set by {@link
+     *  #setThrottle(int)} is kept without blocking the caller.
+     *
+     *  @param action calls one or more write methods
+     *  @return completed when the action is done, or exceptionally with the
+     *  exception it threw
+     */
+    public CompletableFuture<Void> scheduleWrite(WriteAction action)
+    {
+        return schedule(() ->
+        {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     *  Queues a write that yields a result, see {@link
+     *  #scheduleWrite(WriteAction)}.
+     *  @param write calls one or more write methods
+     *  @return completed with the result of <var>write</var>, or
+     *  exceptionally with the exception it threw
+     */
+    private <T> CompletableFuture<T> schedule(Callable<T> write)
+    {
+        CompletableFuture<T> done = new CompletableFuture<>();
+        writer().execute(() ->
+        {
+            try
+            {
+                done.complete(write.call());
+            }
+            catch (Throwable t)
+            {
+                done.completeExceptionally(t);
+            }
+        });
+        return done;
+    }
+
+    /**
+     *  Creates the thread for scheduled writes on first use. It is a daemon
+     *  thread, so wait for the futures of pending writes before exiting.
+     *  @return (see above)
+     */
+    private synchronized ExecutorService writer()
+    {
+        if (writer == null)
+            writer = Executors.newSingleThreadExecutor(r ->
+            {
+                Thread thread = new Thread(r, "Wiki writer " + domain);
+                thread.setDaemon(true);
+                return thread;
+            });
+        return writer;
+    }
+
+    /**
+     *  A write action for {@link #scheduleWrite(WriteAction)}.
+     */
+    @FunctionalInterface
+    public interface WriteAction
+    {
+        /**
+         *  Performs the action.
+         *  @throws IOException if a network error occurs
+         *  @throws LoginException if the action is not permitted
+         */
+        void run() throws IOException, LoginException;
     }
 
     /**
@@ -2418,7 +2738,7 @@ public class Wiki implements Comparable<Wiki>
      *  or Media page
      *  @since 0.24
      */
-    public synchronized void delete(String title, String reason, boolean deltalk) throws IOException, LoginException
+    public void delete(String title, String reason, boolean deltalk) throws IOException, LoginException
     {
         if (namespace(title) < 0)
             throw new UnsupportedOperationException("Cannot delete Special and Media pages!");
@@ -2473,7 +2793,7 @@ public class Wiki implements Comparable<Wiki>
      *  or Media page
      *  @since 0.30
      */
-    public synchronized void undelete(String title, String reason, boolean undeltalk, Revision... revisions)
+    public void undelete(String title, String reason, boolean undeltalk, Revision... revisions)
         throws IOException, LoginException
     {
         if (namespace(title) < 0)
@@ -3041,6 +3361,46 @@ public class Wiki implements Comparable<Wiki>
         return revisions;
     }
 
+    /**
+     *  Gets the revision history of a page as a lazy stream, newest first
+     *  unless reversed. Accepts the same parameters from <var>helper</var> as
+     *  {@link #getPageHistory(String, Wiki.RequestHelper)}. Continuation pages
+     *  are fetched only as the stream is consumed, so a short-circuiting
+     *  operation stops further requests and memory is bounded by one page.
+     *
+     *  @param title a page
+     *  @param helper a {@link Wiki.RequestHelper} (optional, use null to not
+     *  provide any of the optional parameters)
+     *  @return the revisions of that page
+     *  @throws UnsupportedOperationException if <var>title</var> is a Special
+     *  or Media page
+     *  @throws UncheckedIOException if a network error occurs while consuming
+     *  the stream
+     */
+    public Stream<Revision> streamPageHistory(String title, Wiki.RequestHelper helper)
+    {
+        if (namespace(title) < 0)
+            throw new UnsupportedOperationException("Special and Media pages do not have histories!");
+
+        int limit = -1;
+        Map<String, String> getparams = new HashMap<>();
+        getparams.put("prop", "revisions");
+        getparams.put("titles", normalize(title));
+        getparams.put("rvprop", "timestamp|user|ids|flags|size|comment|parsedcomment|sha1|tags");
+        if (helper != null)
+        {
+            helper.setRequestType("rv");
+            getparams.putAll(helper.addDateRangeParameters());
+            getparams.putAll(helper.addReverseParameter());
+            getparams.putAll(helper.addUserParameter());
+            getparams.putAll(helper.addExcludeUserParameter());
+            getparams.putAll(helper.addTagParameter());
+            limit = helper.limit();
+        }
+        return streamListQuery("rv", getparams, "streamPageHistory", limit, "rev",
+            reader -> parseRevision(reader, title));
+    }
+
     /**
      *  Gets the deleted history of a page. Accepted parameters from
      *  <var>helper</var> are:
@@ -3348,7 +3708,7 @@ public class Wiki implements Comparable<Wiki>
      *  @throws CredentialException if page is protected and we can't move it
      *  @since 0.16
      */
-    public synchronized void move(String title, String newTitle, String reason, boolean noredirect, boolean movetalk,
+    public void move(String title, String newTitle, String reason, boolean noredirect, boolean movetalk,
         boolean movesubpages) throws IOException, LoginException
     {
         if (namespace(title) < 0)
@@ -3415,7 +3775,7 @@ public class Wiki implements Comparable<Wiki>
      *  @throws SecurityException if we cannot protect
      *  @since 0.30
      */
-    public synchronized void protect(String page, Map<String, Object> protectionstate, String reason) throws IOException, LoginException
+    public void protect(String page, Map<String, Object> protectionstate, String reason) throws IOException, LoginException
     {
         checkPermissions("protect", "protect");
         throttle();
@@ -3663,7 +4023,7 @@ public class Wiki implements Comparable<Wiki>
      *  documentation</a>
      *  @since 0.30
      */
-    public synchronized void revisionDelete(Boolean hidecontent, Boolean hideuser, Boolean hidereason, String reason, Boolean suppress,
+    public void revisionDelete(Boolean hidecontent, Boolean hideuser, Boolean hidereason, String reason, Boolean suppress,
         List<? extends Event> events) throws IOException, LoginException
     {
         long[] ids = new long[events.size()];
@@ -3780,7 +4140,7 @@ public class Wiki implements Comparable<Wiki>
      *  @throws ConcurrentModificationException if an edit conflict occurs
      *  @since 0.20
      */
-    public synchronized void undo(Revision rev, Revision to, String reason, boolean minor,
+    public void undo(Revision rev, Revision to, String reason, boolean minor,
         boolean bot) throws IOException, LoginException
     {
         throttle();
@@ -3969,85 +4329,134 @@ public class Wiki implements Comparable<Wiki>
      */
     protected Revision parseRevision(String xml, String title)
     {
-        long oldid = Long.parseLong(parseAttribute(xml, " revid", 0));
-        OffsetDateTime timestamp = OffsetDateTime.parse(parseAttribute(xml, "timestamp", 0));
+        XmlAttributes attributes = new XmlAttributes();
+        attributes.parse(xml, 0);
+        long oldid = Long.parseLong(attributes.get("revid"));
+        OffsetDateTime timestamp = OffsetDateTime.parse(attributes.get("timestamp"));
 
         // title
         if (title.isEmpty())
-            title = parseAttribute(xml, "title", 0);
+            title = attributes.get("title");
 
         // summary
         String summary = null, parsedsummary = null;
-        if (xml.contains("comment=\""))
+        if (attributes.has("comment"))
         {
-            summary = parseAttribute(xml, "comment", 0);
-            parsedsummary = parseAttribute(xml, "parsedcomment", 0);
+            summary = attributes.get("comment");
+            parsedsummary = attributes.get("parsedcomment");
         }
 
         // user
-        String user2 = null;
-        if (xml.contains("user=\""))
-            user2 = parseAttribute(xml, "user", 0);
+        String user2 = attributes.get("user");
 
         // flags: minor, bot, new
-        boolean minor = xml.contains("minor=\"\"");
-        boolean bot = xml.contains("bot=\"\"");
-        boolean rvnew = xml.contains("new=\"\"");
+        boolean minor = attributes.has("minor");
+        boolean bot = attributes.has("bot");
+        boolean rvnew = attributes.has("new");
 
         // size
         int size = 0;
-        if (xml.contains("newlen=")) // recentchanges
-            size = Integer.parseInt(parseAttribute(xml, "newlen", 0));
-        else if (xml.contains("size=\""))
-            size = Integer.parseInt(parseAttribute(xml, "size", 0));
-        else if (xml.contains("len=\"")) // deletedrevs
-            size = Integer.parseInt(parseAttribute(xml, "len", 0));
+        if (attributes.has("newlen")) // recentchanges
+            size = Integer.parseInt(attributes.get("newlen"));
+        else if (attributes.has("size"))
+            size = Integer.parseInt(attributes.get("size"));
+        else if (attributes.has("len")) // deletedrevs
+            size = Integer.parseInt(attributes.get("len"));
 
         // sha1
-        String sha1 = null;
-        if (xml.contains("sha1=\""))
-            sha1 = parseAttribute(xml, "sha1", 0);
+        String sha1 = attributes.get("sha1");
 
         Revision revision = new Revision(oldid, timestamp, user2, summary, parsedsummary, title, sha1, minor, bot, rvnew, size);
         // set rcid
-        if (xml.contains("rcid=\""))
-            revision.setRcid(Long.parseLong(parseAttribute(xml, "rcid", 0)));
+        if (attributes.has("rcid"))
+            revision.setRcid(Long.parseLong(attributes.get("rcid")));
 
         // previous revision
-        if (xml.contains("parentid")) // page history/getRevision
-            revision.previous = Long.parseLong(parseAttribute(xml, "parentid", 0));
-        else if (xml.contains("old_revid")) // watchlist
-            revision.previous = Long.parseLong(parseAttribute(xml, "old_revid", 0));
+        if (attributes.has("parentid")) // page history/getRevision
+            revision.previous = Long.parseLong(attributes.get("parentid"));
+        else if (attributes.has("old_revid")) // watchlist
+            revision.previous = Long.parseLong(attributes.get("old_revid"));
 
         // sizediff
-        if (xml.contains("oldlen=\"")) // recentchanges
-            revision.sizediff = revision.size - Integer.parseInt(parseAttribute(xml, "oldlen", 0));
-        else if (xml.contains("sizediff=\""))
-            revision.sizediff = Integer.parseInt(parseAttribute(xml, "sizediff", 0));
+        if (attributes.has("oldlen")) // recentchanges
+            revision.sizediff = revision.size - Integer.parseInt(attributes.get("oldlen"));
+        else if (attributes.has("sizediff"))
+            revision.sizediff = Integer.parseInt(attributes.get("sizediff"));
         
         // tags
         List<String> tags = new ArrayList<>();
-        if (xml.contains("<tag>"))
-        {
-            for (int idx = xml.indexOf("<tag>"); idx >= 0; idx = xml.indexOf("<tag>", ++idx))
-                tags.add(xml.substring(idx + 5, xml.indexOf("</tag>", idx)));
-        }
+        for (int idx = xml.indexOf("<tag>", attributes.end()); idx >= 0; idx = xml.indexOf("<tag>", ++idx))
+            tags.add(xml.substring(idx + 5, xml.indexOf("</tag>", idx)));
         revision.setTags(tags);
 
         // revisiondelete
-        revision.setCommentDeleted(xml.contains("commenthidden=\""));
-        revision.setUserDeleted(xml.contains("userhidden=\""));
+        revision.setCommentDeleted(attributes.has("commenthidden"));
+        revision.setUserDeleted(attributes.has("userhidden"));
         // Silly workaround: prop=revisions, prop=deletedrevisions,
         // list=recentchanges and list=alldeletedrevisions all don't tell you
         // whether content has been revision deleted until you fetch the content.
         // Instead, fetch the SHA-1 of the content to minimize data transfer.
-        revision.setContentDeleted(xml.contains("sha1hidden=\""));
+        revision.setContentDeleted(attributes.has("sha1hidden"));
         // list=usercontribs does tell you
-        if (xml.contains("texthidden=\""))
+        if (attributes.has("texthidden"))
             revision.setContentDeleted(true);
         return revision;
     }
 
+    /**
+     *  Parses a revision of a page history, like {@link #parseRevision(String,
+     *  String)}, from a StAX parser.
+     *  @param reader positioned at the start element of the revision, is
+     *  positioned at its end element afterwards
+     *  @param title the title of the page
+     *  @return the revision
+     *  @throws XMLStreamException if the response is malformed
+     */
+    protected Revision parseRevision(XMLStreamReader reader, String title) throws XMLStreamException
+    {
+        Map<String, String> attributes = new HashMap<>();
+        for (int i = 0; i < reader.getAttributeCount(); i++)
+            attributes.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        long oldid = Long.parseLong(attributes.get("revid"));
+        OffsetDateTime timestamp = OffsetDateTime.parse(attributes.get("timestamp"));
+        if (title.isEmpty())
+            title = attributes.get("title");
+        String summary = attributes.get("comment");
+        String parsedsummary = summary == null ? null : attributes.get("parsedcomment");
+        String size = attributes.get("size");
+
+        Revision revision = new Revision(oldid, timestamp, attributes.get("user"), summary, parsedsummary, title,
+            attributes.get("sha1"), attributes.containsKey("minor"), attributes.containsKey("bot"),
+            attributes.containsKey("new"), size == null ? 0 : Integer.parseInt(size));
+        if (attributes.containsKey("parentid"))
+            revision.previous = Long.parseLong(attributes.get("parentid"));
+        if (attributes.containsKey("sizediff"))
+            revision.sizediff = Integer.parseInt(attributes.get("sizediff"));
+
+        // tags, form: <tags><tag>mw-rollback</tag></tags>
+        List<String> tags = new ArrayList<>();
+        for (int depth = 1; depth > 0; )
+        {
+            int event = reader.next();
+            if (event == XMLStreamReader.START_ELEMENT)
+            {
+                if (reader.getLocalName().equals("tag"))
+                    tags.add(reader.getElementText());
+                else
+                    depth++;
+            }
+            else if (event == XMLStreamReader.END_ELEMENT)
+                depth--;
+        }
+        revision.setTags(tags);
+
+        // revisiondelete, see parseRevision(String, String)
+        revision.setCommentDeleted(attributes.containsKey("commenthidden"));
+        revision.setUserDeleted(attributes.containsKey("userhidden"));
+        revision.setContentDeleted(attributes.containsKey("sha1hidden") || attributes.containsKey("texthidden"));
+        return revision;
+    }
+
     // IMAGE METHODS
 
     /**
@@ -4176,32 +4585,37 @@ public class Wiki implements Comparable<Wiki>
             if (resolveredirect)
                 resolveRedirectParser(files2, line);
             String[] results = line.split("<page ");
+            XmlAttributes attributes = new XmlAttributes();
             for (int i = 1; i < results.length; i++) // 1 = skipping front crud
             {
                 String result = results[i];
                 // missing image - missing attribute means no local file page.
                 // Query returns results from repositories (e.g. Wikimedia Commons)
-                if (!result.contains("<ii ")) 
+                int ii = result.indexOf("<ii ");
+                if (ii < 0)
                     continue;
-                String parsedtitle = parseAttribute(result, "title", 0);
+                attributes.parseAttributes(result, 0);
+                String parsedtitle = attributes.get("title");
                 Map<String, Object> metadata = new HashMap<>(30);
 
                 // size, width, height, sha, mime type
-                metadata.put("size", Long.valueOf(parseAttribute(result, "size", 0)));
-                metadata.put("width", Integer.valueOf(parseAttribute(result, "width", 0)));
-                metadata.put("height", Integer.valueOf(parseAttribute(result, "height", 0)));
-                metadata.put("sha1", parseAttribute(result, "sha1", 0));
-                metadata.put("mime", parseAttribute(result, "mime", 0));
+                attributes.parse(result, ii);
+                metadata.put("size", Long.valueOf(attributes.get("size")));
+                metadata.put("width", Integer.valueOf(attributes.get("width")));
+                metadata.put("height", Integer.valueOf(attributes.get("height")));
+                metadata.put("sha1", attributes.get("sha1"));
+                metadata.put("mime", attributes.get("mime"));
 
                 // exif
                 for (int j = result.indexOf("<metadata "); j > 0; j = result.indexOf("<metadata ", ++j))
                 {
                     // FIXME: discards nesting in metadata
-                    String name = parseAttribute(result, "name", j);
+                    attributes.parse(result, j);
+                    String name = attributes.get("name");
                     // for SVGs, metadata contains "width" and "height". Ignore these.
                     if (name.equals("width") || name.equals("height"))
                         continue;
-                    String value = parseAttribute(result, "value", j);
+                    String value = attributes.get("value");
                     metadata.put(name, value);
                 }
                 intermediate.put(parsedtitle, metadata);
@@ -4423,7 +4837,7 @@ public class Wiki implements Comparable<Wiki>
      *  @throws AccountLockedException if user is blocked
      *  @since 0.21
      */
-    public synchronized void upload(File file, String filename, String contents, String reason) throws IOException, LoginException
+    public void upload(File file, String filename, String contents, String reason) throws IOException, LoginException
     {
         filename = removeNamespace(filename, FILE_NAMESPACE);
         checkPermissions("upload", "upload");
@@ -4532,7 +4946,7 @@ public class Wiki implements Comparable<Wiki>
      *  from this URL
      *  @since 0.32
      */
-    public synchronized void upload(URL url, String filename, String contents, String reason) throws IOException, LoginException
+    public void upload(URL url, String filename, String contents, String reason) throws IOException, LoginException
     {
         filename = removeNamespace(filename, FILE_NAMESPACE);
         checkPermissions("upload", "upload_by_url");
@@ -4760,16 +5174,18 @@ public class Wiki implements Comparable<Wiki>
             String line = makeApiCall(getparams, postparams, "getUserInfo");
             detectUncheckedErrors(line, null, null);
             String[] results = line.split("<user ");
+            XmlAttributes attributes = new XmlAttributes();
             for (int i = 1; i < results.length; i++)
             {
                 // skip non-existent and IP addresses
                 String result = results[i];
-                if (result.contains("missing=\"\"") || result.contains("invalid=\"\""))
+                attributes.parseAttributes(result, 0);
+                if (attributes.has("missing") || attributes.has("invalid"))
                     continue;
 
-                String parsedname = parseAttribute(result, "name", 0);
+                String parsedname = attributes.get("name");
 
-                String registrationdate = parseAttribute(result, "registration", 0);
+                String registrationdate = attributes.get("registration");
                 OffsetDateTime registration = null;
                 // TODO remove check when https://phabricator.wikimedia.org/T24097 is resolved
                 if (registrationdate != null && !registrationdate.isEmpty())
@@ -4789,10 +5205,10 @@ public class Wiki implements Comparable<Wiki>
                     groups.add(result.substring(x + 3, y));
                 }
 
-                int editcount = Integer.parseInt(parseAttribute(result, "editcount", 0));
-                boolean emailable = result.contains("emailable=\"");
-                Gender gender = Gender.valueOf(parseAttribute(result, "gender", 0));
-                boolean blocked = result.contains("blockedby=\"");
+                int editcount = Integer.parseInt(attributes.get("editcount"));
+                boolean emailable = attributes.has("emailable");
+                Gender gender = Gender.valueOf(attributes.get("gender"));
+                boolean blocked = attributes.has("blockedby");
 
                 User user = new User(parsedname, registration, rights, groups, gender, emailable, blocked, editcount);
                 metamap.put(parsedname, user);
@@ -5017,7 +5433,7 @@ public class Wiki implements Comparable<Wiki>
      *  @see Wiki.User#canBeEmailed()
      *  @since 0.24
      */
-    public synchronized void emailUser(User usertomail, String message, String subject, boolean emailme) throws IOException, LoginException
+    public void emailUser(User usertomail, String message, String subject, boolean emailme) throws IOException, LoginException
     {
         if (!usertomail.canBeEmailed())
         {
@@ -5076,7 +5492,7 @@ public class Wiki implements Comparable<Wiki>
      *  @see <a href="https://mediawiki.org/wiki/API:Block">MediaWiki documentation</a>
      *  @since 0.35
      */
-    public synchronized void block(String usertoblock, String reason, OffsetDateTime expiry, Map<String, Boolean> blockoptions) throws IOException, LoginException
+    public void block(String usertoblock, String reason, OffsetDateTime expiry, Map<String, Boolean> blockoptions) throws IOException, LoginException
     {
         // Note: blockoptions is implemented as a Map because more might be added
         // in the future.
@@ -5120,7 +5536,7 @@ public class Wiki implements Comparable<Wiki>
      *  @see <a href="https://mediawiki.org/wiki/API:Block">MediaWiki documentation</a>
      *  @since 0.31
      */
-    public synchronized void unblock(String blockeduser, String reason) throws IOException, LoginException
+    public void unblock(String blockeduser, String reason) throws IOException, LoginException
     {
         checkPermissions("unblock", "unblock");
         throttle();
@@ -5165,7 +5581,7 @@ public class Wiki implements Comparable<Wiki>
      *  @see <a href="https://www.mediawiki.org/wiki/API:User_group_membership">MediaWiki
      *  documentation</a>
      */
-    public synchronized void changeUserPrivileges(User u, List<String> granted, List<OffsetDateTime> expiry,
+    public void changeUserPrivileges(User u, List<String> granted, List<OffsetDateTime> expiry,
         List<String> revoked, String reason) throws IOException, LoginException
     {
         // validate parameters
@@ -5444,18 +5860,20 @@ public class Wiki implements Comparable<Wiki>
         List<Map<String, Object>> results = makeListQuery("sr", getparams, null, "search", -1, (line, list) ->
         {
             // xml form: <p ns="0" title="Main Page" snippet="Blah blah blah" sectiontitle="Section"/>
+            XmlAttributes attributes = new XmlAttributes();
             for (int x = line.indexOf("<p "); x > 0; x = line.indexOf("<p ", ++x))
             {
+                attributes.parse(line, x);
                 Map<String, Object> result = new HashMap<>();
-                result.put("title", parseAttribute(line, "title", x));
-                result.put("snippet", parseAttribute(line, "snippet", x));
-                result.put("wordcount", Integer.parseInt(parseAttribute(line, "wordcount", x)));
-                result.put("size", Integer.parseInt(parseAttribute(line, "size", x)));
-                result.put("lastedittime", OffsetDateTime.parse(parseAttribute(line, "timestamp", x)));
+                result.put("title", attributes.get("title"));
+                result.put("snippet", attributes.get("snippet"));
+                result.put("wordcount", Integer.parseInt(attributes.get("wordcount")));
+                result.put("size", Integer.parseInt(attributes.get("size")));
+                result.put("lastedittime", OffsetDateTime.parse(attributes.get("timestamp")));
 
                 // section title (if available). Stupid API documentation is misleading.
-                if (line.contains("sectionsnippet=\""))
-                    result.put("sectiontitle", parseAttribute(line, "sectionsnippet", x));
+                if (attributes.has("sectionsnippet"))
+                    result.put("sectiontitle", attributes.get("sectionsnippet"));
 
                 list.add(result);
             }
@@ -5650,20 +6068,24 @@ public class Wiki implements Comparable<Wiki>
             // form: <page _idx="2504643" pageid="2504643" ns="14" title="Category:Albert Einstein">
             // <categoryinfo size="95" pages="87" files="0" subcats="8" />
             // </page>
+            XmlAttributes page = new XmlAttributes();
+            XmlAttributes info = new XmlAttributes();
             for (int j = result.indexOf("<page "); j > 0; j = result.indexOf("<page ", ++j))
             {
                 int x = result.indexOf("</page>", j);
                 String item = result.substring(j, x);
-                boolean exists = !item.contains("missing=\"\"");
+                page.parse(item, 0);
+                boolean exists = !page.has("missing");
                 int[] values = new int[4];
                 if (exists)
                 {
-                    values[0] = Integer.parseInt(parseAttribute(item, "size", 0));
-                    values[1] = Integer.parseInt(parseAttribute(item, "pages", 0));
-                    values[2] = Integer.parseInt(parseAttribute(item, "files", 0));
-                    values[3] = Integer.parseInt(parseAttribute(item, "subcats", 0));
+                    info.parse(item, item.indexOf("<categoryinfo "));
+                    values[0] = Integer.parseInt(info.get("size"));
+                    values[1] = Integer.parseInt(info.get("pages"));
+                    values[2] = Integer.parseInt(info.get("files"));
+                    values[3] = Integer.parseInt(info.get("subcats"));
                 }
-                String parsedtitle = parseAttribute(item, "title", 0);
+                String parsedtitle = page.get("title");
                 metamap.put(parsedtitle, values);
             }
         }
@@ -5734,14 +6156,77 @@ public class Wiki implements Comparable<Wiki>
      */
     protected List<CategoryMember> getCategoryMembers(String name, int maxdepth, List<String> visitedcategories,
         boolean sorttimestamp, int... ns) throws IOException
+    {
+        return getCategoryMembers(name, maxdepth, visitedcategories, sorttimestamp, null, ns);
+    }
+
+    /**
+     *  Gets the members of a category that were added to it at or after the
+     *  given time, earliest first. Use this to follow a category without
+     *  fetching all of its members every time.
+     *
+     *  @param name the name of the category (with or without namespace attached)
+     *  @param start only return members added at or after this time
+     *  @param ns a list of namespaces to filter by, empty = all namespaces.
+     *  @return the members added since <var>start</var>
+     *  @throws IOException or UncheckedIOException if a network error occurs
+     */
+    public List<CategoryMember> getCategoryMembers(String name, OffsetDateTime start, int... ns) throws IOException
+    {
+        return getCategoryMembers(name, 0, new ArrayList<>(), true, Objects.requireNonNull(start), ns);
+    }
+
+    /**
+     *  Gets the members of a category.
+     *
+     *  @param name the name of the category
+     *  @param maxdepth depth of recursion for subcategories
+     *  @param visitedcategories list of already visited categories
+     *  @param sorttimestamp whether to sort the returned array by date/time
+     *  added to category (earliest first)
+     *  @param start if not null, only return members added at or after this
+     *  time (requires <var>sorttimestamp</var>)
+     *  @param ns a list of namespaces to filter by, empty = all namespaces.
+     *  @return the members of the category and its subcategories up to
+     *  <var>maxdepth</var>, with the time each was added
+     *  @throws IOException or UncheckedIOException if a network error occurs
+     */
+    protected List<CategoryMember> getCategoryMembers(String name, int maxdepth, List<String> visitedcategories,
+        boolean sorttimestamp, OffsetDateTime start, int... ns) throws IOException
+    {
+        List<CategoryMember> members = new ArrayList<>();
+        forEachCategoryMember(name, maxdepth, visitedcategories, sorttimestamp, start, members::add, ns);
+        return members;
+    }
+
+    /**
+     *  Passes the members of a category to <var>action</var>, sorted as in the
+     *  UI, as they are parsed from the API responses. Unlike {@link
+     *  #getCategoryMembers(String, int...)}, neither the responses nor the
+     *  result list are held in memory.
+     *
+     *  @param name the name of the category (with or without namespace attached)
+     *  @param action receives the members
+     *  @param ns a list of namespaces to filter by, empty = all namespaces.
+     *  @throws IOException or UncheckedIOException if a network error occurs
+     */
+    public void forEachCategoryMember(String name, Consumer<? super CategoryMember> action, int... ns) throws IOException
+    {
+        forEachCategoryMember(name, 0, new ArrayList<>(), false, null, action, ns);
+    }
+
+    /**
+     *  Passes the members of a category to <var>action</var>, see {@link
+     *  #getCategoryMembers(String, int, List, boolean, OffsetDateTime, int...)}
+     *  for the parameters.
+     *  @param action receives the members
+     *  @throws IOException or UncheckedIOException if a network error occurs
+     */
+    protected void forEachCategoryMember(String name, int maxdepth, List<String> visitedcategories,
+        boolean sorttimestamp, OffsetDateTime start, Consumer<? super CategoryMember> action, int... ns) throws IOException
     {
         name = removeNamespace(normalize(name), CATEGORY_NAMESPACE);
-        Map<String, String> getparams = new HashMap<>();
-        getparams.put("list", "categorymembers");
-        getparams.put("cmprop", "title|timestamp");
-        getparams.put("cmtitle", "Category:" + name);
-        if (sorttimestamp)
-            getparams.put("cmsort", "timestamp");
+        Map<String, String> getparams = categoryMemberParams(name, sorttimestamp, start);
         boolean nocat = ns.length != 0;
         if (maxdepth > 0 && nocat)
         {
@@ -5756,65 +6241,121 @@ public class Wiki implements Comparable<Wiki>
             else if (ns.length > 0)
                 getparams.put("cmnamespace", constructNamespaceString(ns));
         }
-        else
+        else if (ns.length > 0)
             getparams.put("cmnamespace", constructNamespaceString(ns));
         final boolean nocat2 = nocat;
 
-        List<CategoryMember> members = makeListQuery("cm", getparams, null, "getCategoryMembers", -1, (line, results) ->
+        // xml form: <cm pageid="24958584" ns="3" title="User talk:86.29.138.185" timestamp="2017-12-05T11:10:35Z" />
+        int size = makeListQuery("cm", getparams, null, "getCategoryMembers", -1, "cm", reader ->
         {
-            try
-            {
-                // xml form: <cm pageid="24958584" ns="3" title="User talk:86.29.138.185" />
-                for (int x = line.indexOf("<cm "); x > 0; x = line.indexOf("<cm ", ++x))
-                {
-                    String member = parseAttribute(line, "title", x);
-
-                    // fetch subcategories
-                    boolean iscat = namespace(member) == CATEGORY_NAMESPACE;
-                    if (maxdepth > 0 && iscat && !visitedcategories.contains(member))
-                    {
-                        visitedcategories.add(member);
-                        List<CategoryMember> categoryMembers = getCategoryMembers(member, maxdepth - 1, visitedcategories, sorttimestamp, ns);
-                        results.addAll(categoryMembers);
-                    }
+            String member = reader.getAttributeValue(null, "title");
 
-                    // ignore this item if we requested subcat but not CATEGORY_NAMESPACE
-                    if (!(maxdepth > 0) || !nocat2 || !iscat) {
-			OffsetDateTime timestamp = OffsetDateTime.parse(parseAttribute(line, "timestamp", x));
-                        results.add(new CategoryMember(member, timestamp));
-		    }
-                }
-            }
-            catch (IOException ex)
+            // fetch subcategories
+            boolean iscat = namespace(member) == CATEGORY_NAMESPACE;
+            if (maxdepth > 0 && iscat && !visitedcategories.contains(member))
             {
-                throw new UncheckedIOException(ex);
+                visitedcategories.add(member);
+                forEachCategoryMember(member, maxdepth - 1, visitedcategories, sorttimestamp, start, action, ns);
             }
-        });
 
-        int size = members.size();
+            // ignore this item if we requested subcat but not CATEGORY_NAMESPACE
+            if (maxdepth > 0 && nocat2 && iscat)
+                return null;
+            OffsetDateTime timestamp = OffsetDateTime.parse(reader.getAttributeValue(null, "timestamp"));
+            return new CategoryMember(member, timestamp);
+        }, action);
+
         log(Level.INFO, "getCategoryMembers", "Successfully retrieved contents of Category:" + name + " (" + size + " items)");
-        return members;
     }
 
     /**
-     *  Searches the wiki for external links. Equivalent to [[Special:Linksearch]].
-     *  Returns a list of pairs, where the first item is a page and the second
-     *  the relevant url. Wildcards (*) are only permitted at the start of the
-     *  search string.
+     *  Gets the members of a category as a lazy stream, sorted as in the UI.
+     *  Continuation pages are fetched only as the stream is consumed, so a
+     *  short-circuiting operation stops further requests and memory is
+     *  bounded by one page.
      *
-     *  @param pattern the pattern (String) to search for (e.g. example.com,
-     *  *.example.com)
-     *  @throws IOException if a network error occurs
-     *  @return a list of results where each entry is { page, URL }
-     *  @since 0.06
+     *  @param name the name of the category (with or without namespace attached)
+     *  @param ns a list of namespaces to filter by, empty = all namespaces.
+     *  @return the members of the category
+     *  @throws UncheckedIOException if a network error occurs while consuming
+     *  the stream
      */
-    public List<String[]> linksearch(String pattern) throws IOException
+    public Stream<CategoryMember> streamCategoryMembers(String name, int... ns)
     {
-        return linksearch(pattern, "http");
+        return streamCategoryMembers(name, false, null, ns);
     }
 
     /**
-     *  Searches the wiki for external links. Equivalent to [[Special:Linksearch]].
+     *  Gets the members of a category that were added to it at or after the
+     *  given time as a lazy stream, earliest first, see {@link
+     *  #streamCategoryMembers(String, int...)}.
+     *
+     *  @param name the name of the category (with or without namespace attached)
+     *  @param start only return members added at or after this time
+     *  @param ns a list of namespaces to filter by, empty = all namespaces.
+     *  @return the members added since <var>start</var>
+     *  @throws UncheckedIOException if a network error occurs while consuming
+     *  the stream
+     */
+    public Stream<CategoryMember> streamCategoryMembers(String name, OffsetDateTime start, int... ns)
+    {
+        return streamCategoryMembers(name, true, Objects.requireNonNull(start), ns);
+    }
+
+    private Stream<CategoryMember> streamCategoryMembers(String name, boolean sorttimestamp, OffsetDateTime start, int... ns)
+    {
+        name = removeNamespace(normalize(name), CATEGORY_NAMESPACE);
+        Map<String, String> getparams = categoryMemberParams(name, sorttimestamp, start);
+        if (ns.length > 0)
+            getparams.put("cmnamespace", constructNamespaceString(ns));
+        return streamListQuery("cm", getparams, "streamCategoryMembers", -1, "cm", reader ->
+            new CategoryMember(reader.getAttributeValue(null, "title"),
+                OffsetDateTime.parse(reader.getAttributeValue(null, "timestamp"))));
+    }
+
+    /**
+     *  Parameters of a list=categorymembers query, except the namespaces.
+     *  @param name the name of the category, without namespace
+     *  @param sorttimestamp whether to sort by date/time added to category
+     *  @param start if not null, only members added at or after this time
+     *  @return the parameters
+     */
+    private Map<String, String> categoryMemberParams(String name, boolean sorttimestamp, OffsetDateTime start)
+    {
+        Map<String, String> getparams = new HashMap<>();
+        getparams.put("list", "categorymembers");
+        getparams.put("cmprop", "title|timestamp");
+        getparams.put("cmtitle", "Category:" + name);
+        if (sorttimestamp)
+            getparams.put("cmsort", "timestamp");
+        if (start != null)
+        {
+            if (!sorttimestamp)
+                throw new IllegalArgumentException("A start time requires sorting by timestamp.");
+            getparams.put("cmstart", convertToString(start));
+        }
+        return getparams;
+    }
+
+    /**
+     *  Searches the wiki for external links. Equivalent to [[Special:Linksearch]].
+     *  Returns a list of pairs, where the first item is a page and the second
+     *  the relevant url. Wildcards (*) are only permitted at the start of the
+     *  search string.
+     *
+     *  @param pattern the pattern (String) to search for (e.g. example.com,
+     *  *.example.com)
+     *  @throws IOException if a network error occurs
+     *  @return a list of results where each entry is { page, URL }
+     *  @since 0.06
+     */
+    public List<String[]> linksearch(String pattern) throws IOException
+    {
+        return linksearch(pattern, "http");
+    }
+
+    /**
+     *  Searches the wiki for external links. Equivalent to [[Special:Linksearch]].
      *  Returns a list of pairs, where the first item is a page and the second
      *  the relevant url. Wildcards (*) are only permitted at the start of the
      *  search string.
@@ -5913,17 +6454,19 @@ public class Wiki implements Comparable<Wiki>
             // XML form: <block id="7844197" user="223.205.208.198" by="ProcseeBot"
             // timestamp="2017-09-24T07:17:08Z" expiry="2017-11-23T07:17:08Z"
             // reason="{{blocked proxy}} <!-- 8080 -->" nocreate="" allowusertalk=""/>
+            XmlAttributes attributes = new XmlAttributes();
             for (int a = line.indexOf("<block "); a > 0; a = line.indexOf("<block ", ++a))
             {
                 // find entry
                 int b = Math.max(line.indexOf("/>", a), line.indexOf("</block>", a));
                 String temp = line.substring(a, b);
+                attributes.parse(temp, 0);
 
-                String blocker = parseAttribute(temp, "by", 0);
-                String blockeduser = parseAttribute(temp, "user", 0);
+                String blocker = attributes.get("by");
+                String blockeduser = attributes.get("user");
                 String target;
                 if (blockeduser == null) // autoblock
-                    target = "#" + parseAttribute(temp, "id", 0);
+                    target = "#" + attributes.get("id");
                 else
                     target = namespaceIdentifier(USER_NAMESPACE) + ":" + blockeduser;
 
@@ -6039,53 +6582,59 @@ public class Wiki implements Comparable<Wiki>
      */
     protected LogEntry parseLogEntry(String xml, String user, String type, String action, String target)
     {
+        // getLogEntries passes the item without "<item"
+        XmlAttributes attributes = new XmlAttributes();
+        if (xml.startsWith("<"))
+            attributes.parse(xml, 0);
+        else
+            attributes.parseAttributes(xml, 0);
+
         // ID (getLogEntries only)
         long id = -1;
-        if (xml.contains("logid=\""))
-            id = Long.parseLong(parseAttribute(xml, "logid", 0));
+        if (attributes.has("logid"))
+            id = Long.parseLong(attributes.get("logid"));
 
-        boolean actionhidden = xml.contains("actionhidden=\"");
-        if (type == null && xml.contains("type=\"")) // only getLogEntries
+        boolean actionhidden = attributes.has("actionhidden");
+        if (type == null && attributes.has("type")) // only getLogEntries
         {
-            type = parseAttribute(xml, "type", 0);
-            action = parseAttribute(xml, "action", 0);
+            type = attributes.get("type");
+            action = attributes.get("action");
         }
 
         // reason
         String reason, parsedreason;
-        boolean reasonhidden = xml.contains("commenthidden=\"");
+        boolean reasonhidden = attributes.has("commenthidden");
         if (USER_CREATION_LOG.equals(type))
         {
             // there is no reason for creating a user
             reason = "";
             parsedreason = "";
         }
-        else if (xml.contains("reason=\""))
+        else if (attributes.has("reason"))
         {
-            reason = parseAttribute(xml, "reason", 0);
+            reason = attributes.get("reason");
             parsedreason = null; // not available in list=blocks / getBlockList!
         }
         else
         {
-            reason = parseAttribute(xml, "comment", 0);
-            parsedreason = parseAttribute(xml, "parsedcomment", 0);
+            reason = attributes.get("comment");
+            parsedreason = attributes.get("parsedcomment");
         }
 
         // generic performer name
-        boolean userhidden = xml.contains("userhidden=\"\"");
-        if (user == null && xml.contains("user=\""))
-            user = parseAttribute(xml, "user", 0);
+        boolean userhidden = attributes.has("userhidden");
+        if (user == null)
+            user = attributes.get("user");
 
         // generic target name
-        // space is important -- commons.getImageHistory("File:Chief1.gif");
-        if (target == null && xml.contains(" title=\""))
-            target = parseAttribute(xml, "title", 0);
+        if (target == null)
+            target = attributes.get("title");
 
-        OffsetDateTime timestamp = OffsetDateTime.parse(parseAttribute(xml, "timestamp", 0));
+        OffsetDateTime timestamp = OffsetDateTime.parse(attributes.get("timestamp"));
 
         // details
         Map<String, String> details = new HashMap<>();
-        if (xml.contains("commenthidden")) // oversighted
+        if (reasonhidden) // oversighted
             details = null;
         else if (type.equals(MOVE_LOG))
             details.put("target_title", parseAttribute(xml, "target_title", 0));
@@ -6431,6 +6980,23 @@ public class Wiki implements Comparable<Wiki>
         return recentChanges(helper, null);
     }
 
+    /**
+     *  Fetches recent additions of pages to categories and removals of pages
+     *  from categories. See {@link #recentChanges(Wiki.RequestHelper, String)}
+     *  for full documentation. Use {@link Wiki.RequestHelper#byTitle(String)}
+     *  to restrict the results to one category. The affected page is only
+     *  mentioned in the (localized) edit summary.
+     *
+     *  @param helper a {@link Wiki.RequestHelper} (optional, use null to not
+     *  provide any optional parameters
+     *  @return pseudo-revisions whose title is the category concerned
+     *  @throws IOException if a network error occurs
+     */
+    public List<Revision> categorizationChanges(Wiki.RequestHelper helper) throws IOException
+    {
+        return recentChanges(helper, "categorize");
+    }
+
     /**
      *  Fetches recent changes to this wiki. WARNING: The <a
      *  href="https://mediawiki.org/wiki/Manual:Recentchanges_table">recentchanges
@@ -6443,6 +7009,7 @@ public class Wiki implements Comparable<Wiki>
      *  <ul>
      *  <li>{@link Wiki.RequestHelper#withinDateRange(OffsetDateTime,
      *      OffsetDateTime) date range}
+     *  <li>{@link Wiki.RequestHelper#byTitle(String) title}
      *  <li>{@link Wiki.RequestHelper#byUser(String) user}
      *  <li>{@link Wiki.RequestHelper#notByUser(String) not by user}
      *  <li>{@link Wiki.RequestHelper#reverse(boolean) reverse}
@@ -6488,6 +7055,7 @@ public class Wiki implements Comparable<Wiki>
         {
             helper.setRequestType("rc");
             getparams.putAll(helper.addNamespaceParameter());
+            getparams.putAll(helper.addTitleParameter());
             getparams.putAll(helper.addUserParameter());
             getparams.putAll(helper.addExcludeUserParameter());
             getparams.putAll(helper.addDateRangeParameters());
@@ -6630,9 +7198,40 @@ public class Wiki implements Comparable<Wiki>
 
 	public class RevisionWalker implements AutoCloseable {
 
+		/**
+		 * Receives the content of a revision in pieces. The array is reused,
+		 * so it must not be kept.
+		 */
+		public interface ContentConsumer {
+			/**
+			 * @return true if no more content is needed
+			 */
+			boolean accept(char[] text, int start, int length);
+		}
+
+		/**
+		 * Upper bound for the total size of revisions whose content is read in
+		 * one request, safely below the API's result size limit of 12 MB.
+		 */
+		private static final int MAX_CONTENT_BYTES = 8 << 20;
+
 		private Map<String, String> getparams = new HashMap<>();
 
-		private String rvcontinue;
+		private final String title;
+
+		/**
+		 * If set, only metadata is paged through, content is read by
+		 * {@link #text()}.
+		 */
+		private final boolean contentOnDemand;
+
+		/**
+		 * parameters of the next page as given by the last response, null if
+		 * there is none
+		 */
+		private Map<String, String> continuation;
+
+		private boolean exhausted;
 
 		private XMLStreamReader reader;
 
@@ -6642,10 +7241,58 @@ public class Wiki implements Comparable<Wiki>
 
 		private String text;
 
-		private int rvLimit = 5;
+		/**
+		 * The reader is positioned in the content of the current revision,
+		 * streaming mode
+		 */
+		private boolean contentPending;
+
+		/** passes content read on demand to {@link #scan} */
+		private final char[] buffer = new char[8192];
+
+		private int rvLimit;
+
+		/** metadata of the revisions older than the current one, on demand mode */
+		private final Deque<Revision> ahead = new ArrayDeque<>();
+
+		/** content read ahead of the current revision, by revid, on demand mode */
+		private final Map<Long, String> prefetched = new HashMap<>();
+
+		/**
+		 * sha1 of all content read so far. The caller is expected to remember
+		 * what it needs from that content, so it isn't read ahead again.
+		 */
+		private final Set<String> readSha1 = new HashSet<>();
+
+		private int contentBatch = 5;
+
+		/**
+		 * On demand mode: the next page of metadata is requested when fewer
+		 * revisions than this are left.
+		 */
+		private static final int PREFETCH_PAGE = 10;
+
+		/** the next page of metadata, requested ahead, on demand mode */
+		private CompletableFuture<InputStream> nextPage;
 
 		public RevisionWalker(String title, OffsetDateTime rvStart)
 				throws IOException {
+			this(title, rvStart, false);
+		}
+
+		/**
+		 * @param contentOnDemand
+		 *            if true, the walker pages through ids, user, timestamp,
+		 *            sha1 and size only. Content is read when {@link #text()}
+		 *            is called, in batches by revid together with the next
+		 *            older revisions whose sha1 hasn't been read yet.
+		 */
+		public RevisionWalker(String title, OffsetDateTime rvStart,
+				boolean contentOnDemand) throws IOException {
+			this.title = normalize(title);
+			this.contentOnDemand = contentOnDemand;
+			// Metadata is small, so larger pages pay off
+			rvLimit = contentOnDemand ? 50 : 5;
 			getparams.put("action", "query");
 			getparams.put("prop", "revisions");
 			if (rvStart != null) {
@@ -6653,91 +7300,247 @@ public class Wiki implements Comparable<Wiki>
 						// Not using toString(), because that truncates 00 seconds, which the API doesn't accept:
 						DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(rvStart));
 			}
-			getparams.put("rvprop", "ids|content|user|timestamp");
-			getparams.put("titles", normalize(title));
+			getparams.put("rvprop", contentOnDemand ? "ids|user|timestamp|sha1|size"
+					: "ids|content|user|timestamp|sha1|size");
+			getparams.put("titles", this.title);
 		}
 
 		public boolean next() throws IOException {
 			try {
-				if (null == reader) {
-					getparams.put("rvlimit", Integer.toString(rvLimit));
-					rvLimit *= 2;
-					if (rvcontinue != null) {
-						// FIXME noch ungetesteter Zweig
-						getparams.put("rvcontinue", rvcontinue);
-						rvcontinue = null;
+				if (contentOnDemand) {
+					text = null;
+					if (null != revision) {
+						prefetched.remove(revision.getID());
 					}
-					stream = apiCallToStream(getparams, null, "RevisionWalker");
-					reader = factory.createXMLStreamReader(stream);
-					top: while (true) {
-						reader.nextTag();
-						if (reader.isStartElement()) {
-							switch (reader.getLocalName()) {
-							case "query-continue":
-								reader.nextTag();
-								rvcontinue = reader.getAttributeValue(null,
-										"rvcontinue");
-								break;
-							case "warnings":
-								warnings: while (true) {
-									reader.next();
-									if (reader.isStartElement()
-											&& "result".equals(reader
-													.getLocalName())) {
-										// e. g.
-										// "This result was truncated because it would otherwise be larger than the limit of 12582912 bytes"
-										String message = reader
-												.getElementText();
-										log(Level.WARNING, "RevisionWalker",
-												message);
-									} else if (reader.isEndElement()
-											&& "warnings".equals(reader
-													.getLocalName())) {
-										break warnings;
-									}
-								}
-								break;
-							case "revisions":
-								break top;
-							}
-						}
+					if (ahead.isEmpty() && !readMetadata()) {
+						revision = null;
+						return false;
+					}
+					revision = ahead.poll();
+					if (ahead.size() < PREFETCH_PAGE && null != continuation) {
+						// the content of the remaining revisions is read
+						// while the next page is on its way
+						nextPage = apiCallAsync(nextRequest(), null,
+								"RevisionWalker");
 					}
+					return true;
 				}
-				reader.nextTag();
-				if (reader.isStartElement()) {
-					assert "rev".equals(reader.getLocalName());
-					String revidStr = reader.getAttributeValue(null, "revid");
-					long revid = (null == revidStr) ? 0 : Long
-							.parseLong(revidStr);
-					String timestampStr = reader.getAttributeValue(null,
-							"timestamp");
-					OffsetDateTime timestamp = (null == timestampStr) ? null
-							: OffsetDateTime.parse(timestampStr);
-					String user = reader.getAttributeValue(null, "user");
-					revision = new Revision(revid, timestamp, user);
-					text = reader.getElementText();
+				text = null;
+				if (contentPending) {
+					skipContent();
+				}
+				if (null == reader) {
+					openRequest();
+				}
+				revision = readRevision();
+				if (null != revision) {
 					return true;
 				}
 				close();
-				if (null == rvcontinue) {
-					// FIXME noch ungetesteter Zweig
+				if (null == continuation) {
 					return false;
 				}
 				return next();
 			} catch (XMLStreamException e) {
 				throw new RuntimeException(e);
 			}
+		}
+
+		/**
+		 * Reads the next page of metadata into {@link #ahead}.
+		 *
+		 * @return false if there are no more revisions
+		 */
+		private boolean readMetadata() throws IOException, XMLStreamException {
+			while (ahead.isEmpty() && !exhausted) {
+				openRequest();
+				Revision older;
+				while (null != (older = readRevision())) {
+					ahead.add(older);
+				}
+				close();
+				exhausted = null == continuation;
+			}
+			return !ahead.isEmpty();
+		}
 
-			// FIXME berücksichtigen
-			// case "error":
-			// String code = attributes.getValue("code");
-			// String info = attributes.getValue("info");
-			// throw new RuntimeException("MW API error: code=" + code
-			// + "info=" + info);
+		private Map<String, String> nextRequest() {
+			getparams.put("rvlimit", Integer.toString(rvLimit));
+			rvLimit *= 2;
+			getparams.keySet().removeIf(param -> param.endsWith("continue"));
+			if (null != continuation) {
+				getparams.putAll(continuation);
+				continuation = null;
+			}
+			return getparams;
+		}
+
+		private void openRequest() throws IOException, XMLStreamException {
+			if (null != nextPage) {
+				stream = await(nextPage);
+				nextPage = null;
+			} else {
+				stream = apiCallToStream(nextRequest(), null, "RevisionWalker");
+			}
+			reader = factory.createXMLStreamReader(stream);
+			top: while (true) {
+				reader.nextTag();
+				if (reader.isStartElement()) {
+					switch (reader.getLocalName()) {
+					// <continue rvcontinue="20170924064528|986351741" continue="||" />
+					case "continue":
+						continuation = new HashMap<>();
+						for (int i = 0; i < reader.getAttributeCount(); i++) {
+							continuation.put(reader.getAttributeLocalName(i),
+									reader.getAttributeValue(i));
+						}
+						break;
+					// legacy form, with rawcontinue
+					case "query-continue":
+						reader.nextTag();
+						continuation = new HashMap<>();
+						continuation.put("rvcontinue", reader
+								.getAttributeValue(null, "rvcontinue"));
+						break;
+					case "error":
+						detectUncheckedErrors("<error code=\""
+								+ reader.getAttributeValue(null, "code")
+								+ "\" info=\""
+								+ Objects.toString(reader.getAttributeValue(
+										null, "info"), "").replace("\"",
+										"&quot;") + "\" />", null, null);
+						break;
+					case "warnings":
+						warnings: while (true) {
+							reader.next();
+							if (reader.isStartElement()
+									&& "result".equals(reader
+											.getLocalName())) {
+								// e. g.
+								// "This result was truncated because it would otherwise be larger than the limit of 12582912 bytes"
+								String message = reader
+										.getElementText();
+								log(Level.WARNING, "RevisionWalker",
+										message);
+							} else if (reader.isEndElement()
+									&& "warnings".equals(reader
+											.getLocalName())) {
+								break warnings;
+							}
+						}
+						break;
+					case "revisions":
+						break top;
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return the next revision of the current response, or null at its
+		 *         end. Unless on demand, the content is left to
+		 *         {@link #text()}, {@link #scan} or {@link #skipContent()}.
+		 */
+		private Revision readRevision() throws XMLStreamException {
+			reader.nextTag();
+			if (!reader.isStartElement()) {
+				return null;
+			}
+			assert "rev".equals(reader.getLocalName());
+			String revidStr = reader.getAttributeValue(null, "revid");
+			long revid = (null == revidStr) ? 0 : Long
+					.parseLong(revidStr);
+			String timestampStr = reader.getAttributeValue(null,
+					"timestamp");
+			OffsetDateTime timestamp = (null == timestampStr) ? null
+					: OffsetDateTime.parse(timestampStr);
+			String user = reader.getAttributeValue(null, "user");
+			String sha1 = reader.getAttributeValue(null, "sha1");
+			String sizeStr = reader.getAttributeValue(null, "size");
+			int size = (null == sizeStr) ? 0 : Integer.parseInt(sizeStr);
+			Revision current = new Revision(revid, timestamp, user, null, null,
+					title, sha1, false, false, false, size);
+			if (contentOnDemand) {
+				// empty, skips to </rev>
+				reader.getElementText();
+			} else {
+				contentPending = true;
+			}
+			return current;
+		}
+
+		/**
+		 * Reads the content of the current revision, and of as many of the
+		 * next older revisions as fit into a batch (doubling up to
+		 * {@code slowmax}), skipping those whose sha1 has been read already.
+		 */
+		private String readText() throws IOException {
+			String sha1 = revision.getSha1();
+			String read = prefetched.remove(revision.getID());
+			if (null != read) {
+				return read;
+			}
+			RevisionTextCache cache = revisiontextcache;
+			if (null != cache && cache.contains(revision.getID())) {
+				return Objects.requireNonNullElse(getText(null,
+						new long[] { revision.getID() }, -1).get(0), "");
+			}
+			List<Revision> batch = new ArrayList<>();
+			batch.add(revision);
+			Set<String> batchSha1 = new HashSet<>();
+			batchSha1.add(sha1);
+			long bytes = revision.getSize();
+			for (Revision older : ahead) {
+				if (batch.size() >= contentBatch
+						|| bytes + older.getSize() > MAX_CONTENT_BYTES) {
+					break;
+				}
+				String olderSha1 = older.getSha1();
+				if (null == olderSha1 || readSha1.contains(olderSha1)
+						|| (null != cache && cache.contains(older.getID()))
+						|| !batchSha1.add(olderSha1)) {
+					continue;
+				}
+				batch.add(older);
+				bytes += older.getSize();
+			}
+			contentBatch = Math.min(2 * contentBatch, slowmax);
+
+			long[] revids = new long[batch.size()];
+			for (int i = 0; i < revids.length; i++) {
+				revids[i] = batch.get(i).getID();
+			}
+			List<String> texts = getText(null, revids, -1);
+			String result = null;
+			for (int i = 0; i < revids.length; i++) {
+				// null for hidden content, which streaming returned as ""
+				String batchText = Objects.requireNonNullElse(texts.get(i), "");
+				Revision batchRevision = batch.get(i);
+				if (batchRevision == revision) {
+					result = batchText;
+				} else {
+					prefetched.put(batchRevision.getID(), batchText);
+				}
+				if (null != batchRevision.getSha1()) {
+					readSha1.add(batchRevision.getSha1());
+				}
+			}
+			return result;
 		}
 
 		@Override
 		public void close() throws IOException {
+			if (null != nextPage) {
+				// not needed anymore
+				nextPage.thenAccept(page -> {
+					try {
+						page.close();
+					} catch (IOException e) {
+						// nothing left to do
+					}
+				});
+				nextPage = null;
+			}
 			if (null != stream) {
 				stream.close();
 				stream = null;
@@ -6752,13 +7555,95 @@ public class Wiki implements Comparable<Wiki>
 			}
 		}
 
+		/**
+		 * Reads up to the end of the current revision, without creating
+		 * strings.
+		 */
+		private void skipContent() throws XMLStreamException {
+			while (reader.next() != XMLStreamReader.END_ELEMENT) {
+				// nothing
+			}
+			contentPending = false;
+		}
+
 		// XXX Zur Konsistenz mit Revision besser über revision.getText
 		// zurückgeben.
 		// Dann kann evtl. auch revision() die Funktion von next() übernehmen.
-		public String text() {
+		public String text() throws IOException {
+			if (null == text && null != revision) {
+				if (contentOnDemand) {
+					text = readText();
+				} else if (contentPending) {
+					String cached = (null == revisiontextcache) ? null
+							: revisiontextcache.get(revision.getID());
+					try {
+						if (null != cached) {
+							skipContent();
+							text = cached;
+						} else {
+							text = reader.getElementText();
+							contentPending = false;
+							if (null != revisiontextcache) {
+								revisiontextcache.put(revision.getID(), text);
+							}
+						}
+					} catch (XMLStreamException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			}
 			return text;
 		}
 
+		/**
+		 * Feeds the content of the current revision to the consumer, until it
+		 * doesn't need more. In streaming mode, the characters are passed on
+		 * as the XML parser delivers them, without creating a string; the
+		 * content isn't available from {@link #text()} afterwards.
+		 */
+		public void scan(ContentConsumer consumer) throws IOException {
+			if (contentPending && null != revisiontextcache
+					&& revisiontextcache.contains(revision.getID())) {
+				// parsed already
+				text();
+			}
+			if (!contentPending) {
+				String content = text();
+				if (null == content) {
+					return;
+				}
+				for (int i = 0; i < content.length(); i += buffer.length) {
+					int length = Math.min(buffer.length, content.length() - i);
+					content.getChars(i, i + length, buffer, 0);
+					if (consumer.accept(buffer, 0, length)) {
+						return;
+					}
+				}
+				return;
+			}
+			try {
+				while (true) {
+					int event = reader.next();
+					if (event == XMLStreamReader.END_ELEMENT) {
+						break;
+					}
+					if (event == XMLStreamReader.CHARACTERS
+							|| event == XMLStreamReader.CDATA
+							|| event == XMLStreamReader.SPACE) {
+						if (consumer.accept(reader.getTextCharacters(),
+								reader.getTextStart(), reader.getTextLength())) {
+							// verdict known, the rest isn't looked at
+							skipContent();
+							return;
+						}
+					}
+				}
+				contentPending = false;
+			} catch (XMLStreamException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
 		public Revision revision() {
 			return revision;
 		}
@@ -7533,6 +8418,9 @@ public class Wiki implements Comparable<Wiki>
             // is not a good idea.
             if (pageDeleted) // FIXME: broken if a page is live, but has deleted revisions
             {
+                String cached = revisiontextcache == null ? null : revisiontextcache.get(getID());
+                if (cached != null)
+                    return cached;
                 Map<String, String> getparams = new HashMap<>();
                 getparams.put("action", "query");
                 getparams.put("prop", "deletedrevisions");
@@ -7544,7 +8432,10 @@ public class Wiki implements Comparable<Wiki>
                 a = temp.indexOf('>', a) + 1;
                 int b = temp.indexOf("</rev>", a); // tag not present if revision has no content
                 log(Level.INFO, "Revision.getText", "Successfully retrieved text of revision " + getID());
-                return (b < 0) ? "" : temp.substring(a, b);
+                String text = (b < 0) ? "" : temp.substring(a, b);
+                if (revisiontextcache != null && b >= 0)
+                    revisiontextcache.put(getID(), text);
+                return text;
             }
             else
                 return Wiki.this.getText(null, new long[] { getID() }, -1).get(0);
@@ -8305,6 +9196,190 @@ public class Wiki implements Comparable<Wiki>
         return results;
     }
     
+    /**
+     *  Parses one item of a list query response, see {@link
+     *  #makeListQuery(String, Map, Map, String, int, String, ListItemParser,
+     *  Consumer)}.
+     *  @param <T> a class describing the parsed API results
+     */
+    @FunctionalInterface
+    protected interface ListItemParser<T>
+    {
+        /**
+         *  @param reader positioned at the start element of the item
+         *  @return the item, or null to skip it
+         *  @throws IOException if a network error occurs
+         *  @throws XMLStreamException if the response is malformed
+         */
+        T parse(XMLStreamReader reader) throws IOException, XMLStreamException;
+    }
+
+    /**
+     *  Fetches list-type results from the MediaWiki API like {@link
+     *  #makeListQuery(String, Map, Map, String, int, BiConsumer)}, but parses
+     *  each response with StAX while it is read and passes the items on as
+     *  they are parsed. Neither the responses nor the results are held in
+     *  memory.
+     *
+     *  @param <T> a class describing the parsed API results (e.g. String,
+     *  LogEntry, Revision)
+     *  @param queryPrefix the request type prefix (e.g. "pl" for prop=links)
+     *  @param getparams a bunch of parameters to send via HTTP GET
+     *  @param postparams if not null, send these parameters via POST (see
+     *  {@link #makeApiCall(Map, Map, String) }).
+     *  @param caller the name of the calling method
+     *  @param limit fetch no more than this many results
+     *  @param element the name of the XML element of an item (e.g. "pl")
+     *  @param parser parses an item
+     *  @param consumer receives the items
+     *  @return the number of items passed to <var>consumer</var>
+     *  @throws IOException if a network error occurs
+     *  @throws SecurityException if we don't have the credentials to perform a
+     *  privileged action (mostly avoidable)
+     */
+    protected <T> int makeListQuery(String queryPrefix, Map<String, String> getparams,
+        Map<String, Object> postparams, String caller, int limit, String element,
+        ListItemParser<T> parser, Consumer<? super T> consumer) throws IOException
+    {
+        if (limit < 0)
+            limit = querylimit;
+        getparams = new HashMap<>(getparams); // ensure this map is mutable
+        getparams.put("action", "query");
+        String limitstring = queryPrefix + "limit";
+        int count = 0;
+        do
+        {
+            getparams.put(limitstring, String.valueOf(Math.min(limit - count, max)));
+            Map<String, String> continuation = new HashMap<>();
+            count += parseListPage(apiCallToStream(getparams, postparams, caller), element, parser,
+                limit - count, consumer, continuation);
+            getparams.keySet().removeIf(param -> param.endsWith("continue"));
+            getparams.putAll(continuation);
+        }
+        while (getparams.containsKey("continue") && count < limit);
+        return count;
+    }
+
+    /**
+     *  Fetches list-type results from the MediaWiki API as a lazy stream. A
+     *  continuation page is requested and parsed with StAX (see {@link
+     *  #makeListQuery(String, Map, Map, String, int, String, ListItemParser,
+     *  Consumer)}) only when the items of the previous one are consumed, so
+     *  no request is made after the stream is abandoned.
+     *
+     *  @param <T> a class describing the parsed API results
+     *  @param queryPrefix the request type prefix (e.g. "pl" for prop=links)
+     *  @param getparams a bunch of parameters to send via HTTP GET
+     *  @param caller the name of the calling method
+     *  @param limit fetch no more than this many results
+     *  @param element the name of the XML element of an item (e.g. "pl")
+     *  @param parser parses an item
+     *  @return the query results
+     */
+    protected <T> Stream<T> streamListQuery(String queryPrefix, Map<String, String> getparams, String caller,
+        int limit, String element, ListItemParser<T> parser)
+    {
+        int maxresults = limit < 0 ? querylimit : limit;
+        Map<String, String> params = new HashMap<>(getparams); // ensure this map is mutable
+        params.put("action", "query");
+        String limitstring = queryPrefix + "limit";
+        Spliterator<T> pages = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL)
+        {
+            private final Deque<T> page = new ArrayDeque<>();
+            private int count = 0;
+            private boolean more = true;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action)
+            {
+                while (page.isEmpty() && more && count < maxresults)
+                {
+                    params.put(limitstring, String.valueOf(Math.min(maxresults - count, max)));
+                    Map<String, String> continuation = new HashMap<>();
+                    try
+                    {
+                        count += parseListPage(apiCallToStream(params, null, caller), element, parser,
+                            maxresults - count, page::add, continuation);
+                    }
+                    catch (IOException ex)
+                    {
+                        throw new UncheckedIOException(ex);
+                    }
+                    params.keySet().removeIf(param -> param.endsWith("continue"));
+                    params.putAll(continuation);
+                    more = params.containsKey("continue");
+                }
+                if (page.isEmpty())
+                    return false;
+                action.accept(page.poll());
+                return true;
+            }
+        };
+        return StreamSupport.stream(pages, false);
+    }
+
+    /**
+     *  Parses one response of a list query with StAX.
+     *  @param stream the response, closed afterwards
+     *  @param element the name of the XML element of an item
+     *  @param parser parses an item
+     *  @param limit pass no more than this many items
+     *  @param consumer receives the items
+     *  @param continuation receives the continuation parameters
+     *  @return the number of items passed to <var>consumer</var>
+     *  @throws IOException if a network error occurs
+     */
+    private <T> int parseListPage(InputStream stream, String element, ListItemParser<T> parser, int limit,
+        Consumer<? super T> consumer, Map<String, String> continuation) throws IOException
+    {
+        int count = 0;
+        try (InputStream in = stream)
+        {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try
+            {
+                while (reader.hasNext())
+                {
+                    if (reader.next() != XMLStreamReader.START_ELEMENT)
+                        continue;
+                    switch (reader.getLocalName())
+                    {
+                        // Continuation parameter has form:
+                        // <continue rccontinue="20170924064528|986351741" continue="-||" />
+                        case "continue":
+                            for (int i = 0; i < reader.getAttributeCount(); i++)
+                                continuation.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+                            break;
+                        case "error":
+                            detectUncheckedErrors("<error code=\"" + reader.getAttributeValue(null, "code")
+                                + "\" info=\"" + Objects.toString(reader.getAttributeValue(null, "info"), "").replace("\"", "&quot;")
+                                + "\" />", null, null);
+                            break;
+                        default:
+                            if (count < limit && reader.getLocalName().equals(element))
+                            {
+                                T item = parser.parse(reader);
+                                if (item != null)
+                                {
+                                    consumer.accept(item);
+                                    count++;
+                                }
+                            }
+                    }
+                }
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (XMLStreamException ex)
+        {
+            throw new IOException(ex);
+        }
+        return count;
+    }
+
     /**
      *  Reorders outputs such that the order of a query's results is the same
      *  order of the input titles. 
@@ -8388,6 +9463,206 @@ public class Wiki implements Comparable<Wiki>
 
     public InputStream apiCallToStream(Map<String, String> getparams, Map<String, Object> postparams,
 		    String caller) throws IOException
+    {
+        String url = apiUrl(getparams);
+        HttpRequest request = apiRequest(url, postparams);
+
+        // main fetch/retry loop
+        // waits before a retry happen in ConcurrencyController.acquire
+        int tries = maxtries;
+        do
+        {
+            tries--;
+            try
+            {
+                long start = concurrency.acquire();
+                logurl(url, caller);
+                HttpResponse<InputStream> hr;
+                try
+                {
+                    hr = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                }
+                catch (IOException | InterruptedException ex)
+                {
+                    concurrency.release(start, false);
+                    throw ex;
+                }
+                concurrency.release(start, isAnswer(hr));
+                if (checkLag(hr))
+                {
+                    hr.body().close();
+                    tries++;
+                    throw new HttpRetryException("Database lagged.", 503);
+                }
+                InputStream inputStream = acceptResponse(hr, caller);
+                if (inputStream != null)
+                    return inputStream;
+
+                // No need to retry anymore, unrecoverable failure.
+                tries = 0;
+            }
+            catch (IOException ex)
+            {
+                // Exception deliberately ignored until retries are depleted.
+                if (tries == 0)
+                    throw ex;
+            }
+            catch (InterruptedException ignored)
+            {
+            }
+        }
+        while (tries != 0);
+	throw new IOException("All tries used up");
+    }
+
+    /**
+     *  Asynchronous variant of {@link #makeApiCall(Map, Map, String)}.
+     *  @param getparams append these parameters to the urlbase
+     *  @param postparams if null, send the request using POST otherwise use GET
+     *  @param caller the caller of this method
+     *  @return the server response, completed exceptionally with an
+     *  IOException (wrapped in an UncheckedIOException if the response could
+     *  not be read) if a network error occurs
+     *  @throws IOException if the request cannot be constructed
+     *  @see #apiCallAsync(Map, Map, String)
+     */
+    public CompletableFuture<String> makeApiCallAsync(Map<String, String> getparams, Map<String, Object> postparams,
+        String caller) throws IOException
+    {
+        return apiCallAsync(getparams, postparams, caller).thenApply(stream ->
+        {
+            try
+            {
+                return streamToString(stream);
+            }
+            catch (IOException ex)
+            {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+
+    /**
+     *  Asynchronous variant of {@link #apiCallToStream(Map, Map, String)}. The
+     *  request is sent with {@link HttpClient#sendAsync}, so no thread waits
+     *  for the response; concurrent calls share one HTTP/2 connection. Retries,
+     *  maxlag and gzip are handled the same way, waits before a retry are
+     *  scheduled instead of slept.
+     *
+     *  @param getparams append these parameters to the urlbase
+     *  @param postparams if null, send the request using POST otherwise use GET
+     *  @param caller the caller of this method
+     *  @return the server response, completed exceptionally with an
+     *  IOException if a network error occurs
+     *  @throws IOException if the request cannot be constructed
+     *  @since 0.38
+     */
+    public CompletableFuture<InputStream> apiCallAsync(Map<String, String> getparams, Map<String, Object> postparams,
+        String caller) throws IOException
+    {
+        String url = apiUrl(getparams);
+        return sendAsync(url, apiRequest(url, postparams), caller, maxtries);
+    }
+
+    /**
+     *  One try of {@link #apiCallAsync(Map, Map, String)}, followed by
+     *  further tries if necessary. Waits before a retry happen in {@link
+     *  ConcurrencyController#acquireAsync()}.
+     *  @param tries the number of tries left, including this one
+     */
+    private CompletableFuture<InputStream> sendAsync(String url, HttpRequest request, String caller, int tries)
+    {
+        return concurrency.acquireAsync().thenCompose(start ->
+        {
+            logurl(url, caller);
+            return client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .whenComplete((hr, ex) -> concurrency.release(start, ex == null && isAnswer(hr)));
+        }).handle((hr, ex) ->
+        {
+            try
+            {
+                if (ex != null)
+                    throw ex instanceof CompletionException ? ex.getCause() : ex;
+                if (checkLag(hr))
+                {
+                    hr.body().close();
+                    // does not count as a try
+                    return sendAsync(url, request, caller, tries);
+                }
+                InputStream inputStream = acceptResponse(hr, caller);
+                if (inputStream != null)
+                    return CompletableFuture.completedFuture(inputStream);
+                // unrecoverable failure
+                return CompletableFuture.<InputStream>failedFuture(new IOException("All tries used up"));
+            }
+            catch (IOException ioex)
+            {
+                // Exception deliberately ignored until retries are depleted.
+                if (tries > 1)
+                    return sendAsync(url, request, caller, tries - 1);
+                return CompletableFuture.<InputStream>failedFuture(ioex);
+            }
+            catch (Throwable t)
+            {
+                return CompletableFuture.<InputStream>failedFuture(t);
+            }
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     *  Decides on a response of {@link #apiCallToStream(Map, Map, String)}
+     *  and {@link #apiCallAsync(Map, Map, String)} that is not lagged: backs
+     *  off and retries if the server asks to, else accepts it.
+     *  @param hr the HTTP response received
+     *  @param caller the caller of the API call
+     *  @return the response body, or null if the request failed for good
+     *  @throws HttpRetryException if the request should be tried again
+     *  @throws IOException if a network error occurs
+     */
+    private InputStream acceptResponse(HttpResponse<InputStream> hr, String caller) throws IOException
+    {
+        int statusCode = hr.statusCode();
+        if (statusCode == HTTP_TOO_MANY_REQUESTS)
+        {
+            hr.body().close();
+            log(Level.WARNING, caller, "HTTP 429 Too Many Requests.");
+            concurrency.backOff(retryAfter(hr.headers()));
+            throw new HttpRetryException("Too many requests.", statusCode);
+        }
+
+        boolean zipped_ = hr.headers().firstValue("Content-Encoding").orElse("").equals("gzip");
+        InputStream inputStream = new BufferedInputStream(zipped_ ? new GZIPInputStream(hr.body()) : hr.body());
+        log(Level.INFO, "makeApiCall", "Received status " + statusCode);
+        // API errors come with status 200, but first in the response
+        String response = statusCode == HTTP_OK ? peek(inputStream) : streamToString(inputStream);
+
+        // Check for rate limit (though might be a long one e.g. email)
+        if (response.contains("error code=\"ratelimited\""))
+        {
+            inputStream.close();
+            // the Retry-After header field is usually missing here
+            // see https://phabricator.wikimedia.org/T172293
+            log(Level.WARNING, caller, "Server-side throttle hit.");
+            concurrency.backOff(retryAfter(hr.headers()));
+            throw new HttpRetryException("Action throttled.", 503);
+        }
+        // Check for database lock
+        if (response.contains("error code=\"readonly\""))
+        {
+            inputStream.close();
+            log(Level.WARNING, caller, "Database locked!");
+            concurrency.pause(10);
+            throw new HttpRetryException("Database locked!", 503);
+        }
+        return statusCode == HTTP_OK ? inputStream : null;
+    }
+
+    /**
+     *  Appends the parameters and the default API parameters to the API URL.
+     *  @param getparams the parameters
+     *  @return the URL
+     */
+    private String apiUrl(Map<String, String> getparams)
     {
         // build the URL
         StringBuilder urlbuilder = new StringBuilder(apiUrl + "?");
@@ -8400,8 +9675,19 @@ public class Wiki implements Comparable<Wiki>
             urlbuilder.append('=');
             urlbuilder.append(URLEncoder.encode(entry.getValue(), StandardCharsets.UTF_8));
         }
-        String url = urlbuilder.toString();
+        return urlbuilder.toString();
+    }
 
+    /**
+     *  Constructs an API request, see {@link #makeApiCall(Map, Map, String)}
+     *  for how <var>postparams</var> are sent.
+     *  @param url the URL, see {@link #apiUrl(Map)}
+     *  @param postparams if null, send the request using POST otherwise use GET
+     *  @return the request
+     *  @throws IOException if a network error occurs
+     */
+    private HttpRequest apiRequest(String url, Map<String, Object> postparams) throws IOException
+    {
         // POST stuff
         boolean isPOST = (postparams != null && !postparams.isEmpty());
         StringBuilder stringPostBody = new StringBuilder();
@@ -8455,79 +9741,47 @@ public class Wiki implements Comparable<Wiki>
             }
         }
 
-        // main fetch/retry loop
-        int tries = maxtries;
-        do
+        var connection = makeConnection(url);
+        if (isPOST)
         {
-            logurl(url, caller);
-            tries--;
-            try
-            {
-                var connection = makeConnection(url);
-                if (isPOST)
-                {
-                    if (multipart)
-                        connection = connection.POST(HttpRequest.BodyPublishers.ofByteArray(multipartPostBody.toByteArray()))
-                            .header("Content-Type", "multipart/form-data; boundary=" + boundary);
-                    else
-                        connection = connection.POST(HttpRequest.BodyPublishers.ofString(stringPostBody.toString()))
-                            .header("Content-Type", "application/x-www-form-urlencoded");
-                }
-
-                HttpResponse<InputStream> hr = client.send(connection.build(), HttpResponse.BodyHandlers.ofInputStream());
-                boolean zipped_ = hr.headers().firstValue("Content-Encoding").orElse("").equals("gzip");
-                if (checkLag(hr))
-                {
-                    tries++;
-                    throw new HttpRetryException("Database lagged.", 503);
-                }
-
-                InputStream inputStream = zipped_ ? new GZIPInputStream(hr.body()) : hr.body();
-		int statusCode = hr.statusCode();
-		log(Level.INFO, "makeApiCall", "Received status " + statusCode);
-		if (statusCode == HTTP_OK) { // TODO Does the API actually return non-OK for the relevant cases below?
-			return inputStream;
-                }
-		String response = streamToString(inputStream);
-
-                // Check for rate limit (though might be a long one e.g. email)
-                if (response.contains("error code=\"ratelimited\""))
-                {
-                    // the Retry-After header field is useless here
-                    // see https://phabricator.wikimedia.org/T172293
-                    log(Level.WARNING, caller, "Server-side throttle hit.");
-                    Thread.sleep(10000);
-                    throw new HttpRetryException("Action throttled.", 503);
-                }
-                // Check for database lock
-                if (response.contains("error code=\"readonly\""))
-                {
-                    log(Level.WARNING, caller, "Database locked!");
-                    Thread.sleep(10000);
-                    throw new HttpRetryException("Database locked!", 503);
-                }
+            if (multipart)
+                connection = connection.POST(HttpRequest.BodyPublishers.ofByteArray(multipartPostBody.toByteArray()))
+                    .header("Content-Type", "multipart/form-data; boundary=" + boundary);
+            else
+                connection = connection.POST(HttpRequest.BodyPublishers.ofString(stringPostBody.toString()))
+                    .header("Content-Type", "application/x-www-form-urlencoded");
+        }
+        return connection.build();
+    }
 
-                // No need to retry anymore, success or unrecoverable failure.
-                tries = 0;
-            }
-            catch (IOException ex)
-            {
-                // Exception deliberately ignored until retries are depleted.
-                if (tries == 0)
-                    throw ex;
-            }
-            catch (InterruptedException ignored)
-            {
-            }
+    /**
+     *  Waits for the result of an asynchronous API call.
+     *  @param <T> the result type
+     *  @param future the result of {@link #apiCallAsync(Map, Map, String)}
+     *  or {@link #makeApiCallAsync(Map, Map, String)}
+     *  @return the result
+     *  @throws IOException if a network error occurs
+     *  @since 0.38
+     */
+    public static <T> T await(CompletableFuture<T> future) throws IOException
+    {
+        try
+        {
+            return future.join();
+        }
+        catch (CompletionException ex)
+        {
+            Throwable cause = ex.getCause();
+            if (cause instanceof UncheckedIOException)
+                cause = cause.getCause();
+            if (cause instanceof IOException)
+                throw (IOException)cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw ex;
         }
-        while (tries != 0);
-    
-        // empty response from server
-        // TODO If a check for empty response is necessary, re-implement it
-	// if (response.isEmpty())
-           // throw new UnknownError("Received empty response from server!");
-        // return response;
-	throw new IOException("All tries used up");
     }
 
     public static String streamToString(InputStream inputStream) throws IOException {
@@ -8574,16 +9828,17 @@ public class Wiki implements Comparable<Wiki>
     }
 
     /**
-     *  Checks for database lag and sleeps if {@code lag < getMaxLag()}.
+     *  Checks for database lag and {@linkplain ConcurrencyController#backOff(long)
+     *  backs off} if {@code lag >= getMaxLag()}. All requests of this Wiki
+     *  wait then, not just the calling thread.
      *  @param response the HTTP response received
      *  @return true if there was sufficient database lag.
-     *  @throws InterruptedException if any wait was interrupted
      *  @see #getMaxLag()
      *  @see <a href="https://mediawiki.org/wiki/Manual:Maxlag_parameter">
      *  MediaWiki documentation</a>
      *  @since 0.32
      */
-    protected synchronized boolean checkLag(HttpResponse response) throws InterruptedException
+    protected boolean checkLag(HttpResponse<?> response)
     {
         HttpHeaders hdrs = response.headers();
         long lag = hdrs.firstValueAsLong("X-Database-Lag").orElse(-5);
@@ -8591,14 +9846,59 @@ public class Wiki implements Comparable<Wiki>
         // Thus, we need to retry in case of equality.
         if (lag >= maxlag)
         {
-            long time = hdrs.firstValueAsLong("Retry-After").orElse(10);
+            long time = retryAfter(response.headers());
             logger.log(Level.WARNING, "Current database lag {0} s exceeds maxlag of {1} s, waiting {2} s.", new Object[] { lag, maxlag, time });
-            Thread.sleep(time * 1000L);
+            concurrency.backOff(time);
             return true;
         }
         return false;
     }
 
+    /**
+     *  Tells the {@linkplain ConcurrencyController concurrency controller}
+     *  whether a response counts for the latency.
+     *  @param response the HTTP response received
+     *  @return false if the server reported lag or too many requests
+     */
+    private static boolean isAnswer(HttpResponse<?> response)
+    {
+        return response.statusCode() != HTTP_TOO_MANY_REQUESTS
+            && response.headers().firstValue("X-Database-Lag").isEmpty();
+    }
+
+    /**
+     *  Gets the time to wait before retrying from the Retry-After header.
+     *  @param headers the headers of the HTTP response received
+     *  @return the number of seconds, 10 if there is no header in seconds
+     */
+    static long retryAfter(HttpHeaders headers)
+    {
+        try
+        {
+            return headers.firstValueAsLong("Retry-After").orElse(10);
+        }
+        catch (NumberFormatException ex)
+        {
+            // an HTTP date
+            return 10;
+        }
+    }
+
+    /**
+     *  Reads the start of a response, where the API puts an error element,
+     *  without consuming it.
+     *  @param in the response, supporting mark and reset
+     *  @return up to the first {@link #PEEK_BYTES} bytes
+     *  @throws IOException if a network error occurs
+     */
+    private static String peek(InputStream in) throws IOException
+    {
+        in.mark(PEEK_BYTES);
+        byte[] head = in.readNBytes(PEEK_BYTES);
+        in.reset();
+        return new String(head, StandardCharsets.UTF_8);
+    }
+
     /**
      *  Sets the HTTPClient used by this instance. Use this to set a proxy, 
      *  SSL parameters and the connection timeout.
@@ -8696,7 +9996,7 @@ public class Wiki implements Comparable<Wiki>
         Map<String, Consumer<String>> info) throws IOException, LoginException
     {
         // perform various status checks every 100 or so edits
-        if (statuscounter > statusinterval)
+        if (isStatusCheckDue())
         {
             // purge user rights in case of desysop or loss of other priviliges
             user = getUsers(List.of(user.getUsername())).get(0);
@@ -8707,10 +10007,7 @@ public class Wiki implements Comparable<Wiki>
             if ((assertion & ASSERT_NO_MESSAGES) == ASSERT_NO_MESSAGES && hasNewMessages())
                 // assert !hasNewMessages() : "User has new messages";
                 throw new AssertionError("User has new messages");
-            statuscounter = 0;
         }
-        else
-            statuscounter++;
 
         if (!line.contains("<error code=\""))
             return true;
@@ -8744,6 +10041,23 @@ public class Wiki implements Comparable<Wiki>
         return detectUncheckedErrors(line, uncheckederrors, info);
     }
 
+    /**
+     *  Counts calls of {@link #checkErrorsAndUpdateStatus} and tells when the
+     *  periodic status check is due. Writes are not synchronized on this Wiki,
+     *  so the counter is.
+     *  @return (see above)
+     */
+    private synchronized boolean isStatusCheckDue()
+    {
+        if (statuscounter > statusinterval)
+        {
+            statuscounter = 0;
+            return true;
+        }
+        statuscounter++;
+        return false;
+    }
+
     /**
      *  Strips entity references like &quot; from the supplied string. This
      *  might be useful for subclasses.
@@ -8754,11 +10068,7 @@ public class Wiki implements Comparable<Wiki>
     protected String decode(String in)
     {
         // Remove entity references. Oddly enough, URLDecoder doesn't nuke these.
-        in = in.replace("&lt;", "<").replace("&gt;", ">"); // html tags
-        in = in.replace("&quot;", "\"");
-        in = in.replace("&#039;", "'");
-        in = in.replace("&amp;", "&");
-        return in;
+        return XmlAttributes.decode(in, 0, in.length());
     }
 
     /**
@@ -8772,15 +10082,14 @@ public class Wiki implements Comparable<Wiki>
      */
     protected String parseAttribute(String xml, String attribute, int index)
     {
-        // let's hope the JVM always inlines this
-        if (xml.contains(attribute + "=\""))
-        {
-            int a = xml.indexOf(attribute + "=\"", index) + attribute.length() + 2;
-            int b = xml.indexOf('\"', a);
-            return decode(xml.substring(a, b));
-        }
-        else
+        // only look from index onwards, and decode in the same pass as copying
+        String search = attribute + "=\"";
+        int a = xml.indexOf(search, index);
+        if (a < 0)
             return null;
+        a += search.length();
+        int b = xml.indexOf('\"', a);
+        return XmlAttributes.decode(xml, a, b);
     }
 
     /**
@@ -8874,6 +10183,35 @@ public class Wiki implements Comparable<Wiki>
      *  @since 0.27
      */
     public String normalize(String s)
+    {
+        ensureNamespaceCache();
+        // results depend on the namespaces, don't cache while they are fetched
+        if (namespaceindex == null)
+            return normalizeTitle(s);
+        String normalized;
+        synchronized (normalizedtitles)
+        {
+            normalized = normalizedtitles.get(s);
+        }
+        if (normalized == null)
+        {
+            // invalid titles throw and are not cached
+            normalized = normalizeTitle(s);
+            synchronized (normalizedtitles)
+            {
+                normalizedtitles.put(s, normalized);
+            }
+        }
+        return normalized;
+    }
+
+    /**
+     *  Does the work of {@link #normalize(String)}, without caching.
+     *  @param s the string to normalize
+     *  @return the normalized string
+     *  @throws IllegalArgumentException if the title is invalid
+     */
+    private String normalizeTitle(String s)
     {
         // remove section names
         if (s.contains("#"))
@@ -8905,9 +10243,14 @@ public class Wiki implements Comparable<Wiki>
             }
         }
 
+        // collapse runs of whitespace, like replaceAll("\\s+", " ")
+        StringBuilder sb = new StringBuilder(temp.length);
+        boolean space = false;
+        boolean ascii = true;
         for (int i = 0; i < temp.length; i++)
         {
-            switch (temp[i])
+            char c = temp[i];
+            switch (c)
             {
                 // illegal characters
                 case '{':
@@ -8918,30 +10261,52 @@ public class Wiki implements Comparable<Wiki>
                 case ']':
                 case '|':
                     throw new IllegalArgumentException(s + " is an illegal title");
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\u000B':
+                case '\f':
+                case '\r':
+                    if (!space)
+                        sb.append(' ');
+                    space = true;
+                    continue;
             }
+            space = false;
+            ascii &= c < 0x80;
+            sb.append(c);
         }
         // https://mediawiki.org/wiki/Unicode_normalization_considerations
-        String temp2 = new String(temp).replaceAll("\\s+", " ");
-        return Normalizer.normalize(temp2, Normalizer.Form.NFC);
+        // ASCII text is always in NFC
+        String temp2 = sb.toString();
+        return ascii ? temp2 : Normalizer.normalize(temp2, Normalizer.Form.NFC);
     }
 
     /**
      *  Ensures no less than <var>throttle</var> milliseconds pass between edits
-     *  and other write actions.
+     *  and other write actions. Only the calling thread waits; reads and other
+     *  methods of this Wiki are not blocked.
      *  @since 0.30
      */
-    protected synchronized void throttle()
+    protected void throttle()
     {
+        // reserve the next slot, then wait without holding any lock
+        long time;
+        synchronized (throttlelock)
+        {
+            long now = System.currentTimeMillis();
+            long slot = Math.max(now, lastThrottleActionTime + throttle);
+            lastThrottleActionTime = slot;
+            time = slot - now;
+        }
         try
         {
-            long time = throttle - System.currentTimeMillis() + lastThrottleActionTime;
             if (time > 0)
                 Thread.sleep(time);
         }
         catch (InterruptedException ignored)
         {
         }
-        this.lastThrottleActionTime = System.currentTimeMillis();
     }
 
     // user rights methods
@@ -0,0 +1,227 @@
+package org.wikipedia;
+
+import java.util.Arrays;
+
+/**
+ * The attributes of one XML start tag of an API response, parsed in a single
+ * pass. Values are decoded only when asked for. An instance is meant to be
+ * reused for all elements of a response, so parsing an element allocates
+ * nothing but the values retrieved.
+ *
+ * Only what the API emits is supported: no comments or CDATA inside tags, the
+ * entities of {@link #decode(CharSequence, int, int)}.
+ */
+final class XmlAttributes {
+
+	private String xml;
+
+	private int count;
+
+	// start and end of name and value of each attribute in xml
+	private int[] bounds = new int[32];
+
+	private int end;
+
+	private boolean empty;
+
+	/**
+	 * Parses the first start tag at or after the given index.
+	 *
+	 * @param index
+	 *            where to start looking
+	 * @return false if there is no start tag, the attributes are empty then
+	 */
+	boolean parse(String xml, int index) {
+		this.xml = xml;
+		count = 0;
+		empty = false;
+		int i = xml.indexOf('<', index);
+		while (i >= 0 && i + 1 < xml.length()
+				&& !isNameStart(xml.charAt(i + 1))) {
+			i = xml.indexOf('<', i + 1);
+		}
+		if (i < 0 || i + 1 >= xml.length()) {
+			end = xml.length();
+			return false;
+		}
+		// element name
+		i++;
+		while (i < xml.length() && !isSpace(xml.charAt(i))
+				&& xml.charAt(i) != '>' && xml.charAt(i) != '/') {
+			i++;
+		}
+		parseAttributes(xml, i);
+		return true;
+	}
+
+	/**
+	 * Parses attributes up to the end of a start tag, for text that is cut
+	 * behind the element name, e. g. by {@code split("<item ")}.
+	 *
+	 * @param index
+	 *            where the attributes start
+	 */
+	void parseAttributes(String xml, int index) {
+		this.xml = xml;
+		count = 0;
+		empty = false;
+		int i = index;
+		while (i < xml.length()) {
+			char c = xml.charAt(i);
+			if (isSpace(c)) {
+				i++;
+			} else if (c == '>') {
+				end = i + 1;
+				return;
+			} else if (c == '/') {
+				empty = true;
+				i++;
+			} else {
+				int nameStart = i;
+				while (i < xml.length() && xml.charAt(i) != '='
+						&& !isSpace(xml.charAt(i)) && xml.charAt(i) != '>') {
+					i++;
+				}
+				int nameEnd = i;
+				while (i < xml.length() && (isSpace(xml.charAt(i)))) {
+					i++;
+				}
+				if (i >= xml.length() || xml.charAt(i) != '=') {
+					// no value, not XML, skip the name
+					continue;
+				}
+				i++;
+				while (i < xml.length() && isSpace(xml.charAt(i))) {
+					i++;
+				}
+				if (i >= xml.length()) {
+					break;
+				}
+				char quote = xml.charAt(i);
+				int valueEnd = xml.indexOf(quote, i + 1);
+				if (valueEnd < 0) {
+					break;
+				}
+				add(nameStart, nameEnd, i + 1, valueEnd);
+				i = valueEnd + 1;
+			}
+		}
+		end = xml.length();
+	}
+
+	private void add(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+		if (4 * count + 4 > bounds.length) {
+			bounds = Arrays.copyOf(bounds, 2 * bounds.length);
+		}
+		int j = 4 * count++;
+		bounds[j] = nameStart;
+		bounds[j + 1] = nameEnd;
+		bounds[j + 2] = valueStart;
+		bounds[j + 3] = valueEnd;
+	}
+
+	/**
+	 * @return index after the start tag
+	 */
+	int end() {
+		return end;
+	}
+
+	/**
+	 * @return true if the tag ends with "/>"
+	 */
+	boolean isEmptyElement() {
+		return empty;
+	}
+
+	boolean has(String name) {
+		return find(name) >= 0;
+	}
+
+	/**
+	 * @return the decoded value, or null if the attribute is not present
+	 */
+	String get(String name) {
+		int j = find(name);
+		return j < 0 ? null : decode(xml, bounds[j + 2], bounds[j + 3]);
+	}
+
+	private int find(String name) {
+		for (int j = 0; j < 4 * count; j += 4) {
+			if (bounds[j + 1] - bounds[j] == name.length()
+					&& xml.regionMatches(bounds[j], name, 0, name.length())) {
+				return j;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Replaces {@code &lt; &gt; &quot; &#039; &amp;} in one pass. Like
+	 * replacing them one after the other with {@code &amp;} last, the result
+	 * of a replacement is not decoded again.
+	 */
+	static String decode(CharSequence in, int start, int end) {
+		int amp = -1;
+		for (int i = start; i < end; i++) {
+			if (in.charAt(i) == '&') {
+				amp = i;
+				break;
+			}
+		}
+		if (amp < 0) {
+			return in.subSequence(start, end).toString();
+		}
+		StringBuilder out = new StringBuilder(end - start);
+		out.append(in, start, amp);
+		for (int i = amp; i < end; i++) {
+			char c = in.charAt(i);
+			if (c == '&') {
+				if (matches(in, i, end, "&lt;")) {
+					out.append('<');
+					i += 3;
+					continue;
+				} else if (matches(in, i, end, "&gt;")) {
+					out.append('>');
+					i += 3;
+					continue;
+				} else if (matches(in, i, end, "&quot;")) {
+					out.append('"');
+					i += 5;
+					continue;
+				} else if (matches(in, i, end, "&#039;")) {
+					out.append('\'');
+					i += 5;
+					continue;
+				} else if (matches(in, i, end, "&amp;")) {
+					out.append('&');
+					i += 4;
+					continue;
+				}
+			}
+			out.append(c);
+		}
+		return out.toString();
+	}
+
+	private static boolean matches(CharSequence in, int i, int end,
+			String entity) {
+		if (end - i < entity.length()) {
+			return false;
+		}
+		for (int k = 0; k < entity.length(); k++) {
+			if (in.charAt(i + k) != entity.charAt(k)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+	}
+
+	private static boolean isNameStart(char c) {
+		return Character.isLetter(c) || c == '_' || c == ':';
+	}
+}
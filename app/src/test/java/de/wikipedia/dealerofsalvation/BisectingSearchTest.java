@@ -0,0 +1,132 @@
+package de.wikipedia.dealerofsalvation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.wikipedia.Wiki;
+import org.wikipedia.Wiki.Revision;
+
+import de.wikipedia.dealerofsalvation.MaintenanceBot.NoMaintenanceTemplateFoundException;
+
+public class BisectingSearchTest {
+
+	private final Wiki wiki = Wiki.newSession("de.wikipedia.org");
+
+	private final MaintenanceCategory category = new MaintenanceCategory(
+			"Belege fehlen", true, "Belege");
+
+	/** newest first */
+	private final List<Revision> history = new ArrayList<>();
+
+	private final Map<Long, String> texts = new HashMap<>();
+
+	private int read;
+
+	private void add(String user, String text) {
+		long revid = 1000 - history.size();
+		history.add(wiki.new Revision(revid, OffsetDateTime.of(2020, 1, 1, 0,
+				0, 0, 0, ZoneOffset.UTC).minusDays(history.size()), user, null,
+				null, "Bad Ischl", Integer.toHexString(text.hashCode()), false,
+				false, false, text.length()));
+		texts.put(revid, text);
+	}
+
+	private Revision find() throws Exception {
+		return new BisectingSearch(category, "Bad Ischl", history, revids -> {
+			List<String> result = new ArrayList<>();
+			for (long revid : revids) {
+				result.add(texts.get(revid));
+				read++;
+			}
+			return result;
+		}).find();
+	}
+
+	@Test
+	public void testBoundary() throws Exception {
+		for (int i = 0; i < 1000; i++) {
+			add("U" + i, i < 700 ? "{{Belege}} Version " + i : "Version " + i);
+		}
+		assertEquals(history.get(699).getID(), find().getID());
+		assertTrue("read " + read, read < 50);
+	}
+
+	@Test
+	public void testOldestRevision() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			add("A", "{{Belege}} Version " + i);
+		}
+		assertEquals(history.get(9).getID(), find().getID());
+	}
+
+	@Test
+	public void testRevertedRemoval() throws Exception {
+		for (int i = 0; i < 20; i++) {
+			add("A", "{{Belege}} Version " + i);
+		}
+		// template removed by B in two edits, then restored by A
+		add("B", "Version 20");
+		add("B", "Version 21");
+		add("A", "{{Belege}} Version 19");
+		for (int i = 23; i < 40; i++) {
+			add("A", "{{Belege}} Version " + i);
+		}
+		add("C", "Version 40");
+		add("D", "Version 41");
+		assertEquals(history.get(39).getID(), find().getID());
+	}
+
+	@Test
+	public void testNotReverted() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			add("A", "{{Belege}} Version " + i);
+		}
+		add("B", "Version 3");
+		add("A", "{{Belege}} Version 4");
+		assertEquals(history.get(2).getID(), find().getID());
+	}
+
+	@Test
+	public void testIdentityRevertAcrossUsers() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			add("A", "{{Belege}} Version " + i);
+		}
+		// vandalism by B and C, reverted by A to the version before
+		add("B", "Version 10");
+		add("C", "Version 11");
+		add("B", "{{Belege}} Version 9");
+		for (int i = 13; i < 30; i++) {
+			add("A", "{{Belege}} Version " + i);
+		}
+		add("D", "Version 30");
+		add("E", "Version 31");
+		assertEquals(history.get(29).getID(), find().getID());
+	}
+
+	@Test
+	public void testIdentityRevertTooDeep() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			add("A", "{{Belege}} Version " + i);
+		}
+		for (int i = 10; i <= 10 + FirstRevisionSearch.MAX_REVERT_DEPTH; i++) {
+			add("U" + i, "Version " + i);
+		}
+		add("A", "{{Belege}} Version 9");
+		assertEquals(history.get(9).getID(), find().getID());
+	}
+
+	@Test(expected = NoMaintenanceTemplateFoundException.class)
+	public void testNoTemplate() throws Exception {
+		add("A", "Version 0");
+		add("A", "{{Belege}} Version 1");
+		find();
+	}
+}
@@ -0,0 +1,55 @@
+package de.wikipedia.dealerofsalvation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import org.junit.Test;
+import org.wikipedia.Wiki;
+import org.wikipedia.Wiki.Revision;
+
+public class CheckpointJournalTest {
+
+	private final Wiki wiki = Wiki.newSession("de.wikipedia.org");
+
+	private final MaintenanceCategory category = new MaintenanceCategory(
+			"Belege fehlen", true, "Belege");
+
+	@Test
+	public void testResume() throws Exception {
+		Path file = Files.createTempDirectory("journal").resolve(
+				"journal.txt");
+		OffsetDateTime timestamp = OffsetDateTime.of(2011, 5, 6, 7, 8, 9, 0,
+				ZoneOffset.UTC);
+		try (CheckpointJournal journal = new CheckpointJournal(file, wiki)) {
+			journal.record(category, "Bad Ischl", wiki.new Revision(4711L,
+					timestamp, "Anonymous"));
+		}
+		// A line cut off by a crash must not stop the next run
+		Files.write(file, "Belege fehlen\tLinz\t47".getBytes("UTF-8"),
+				StandardOpenOption.APPEND);
+
+		try (CheckpointJournal journal = new CheckpointJournal(file, wiki)) {
+			Revision revision = journal.get(category, "Bad Ischl");
+			assertEquals(4711L, revision.getID());
+			assertEquals(timestamp, revision.getTimestamp());
+			assertNull(journal.get(category, "Linz"));
+			journal.record(category, "Wels", wiki.new Revision(4712L,
+					timestamp, "Anonymous"));
+		}
+		try (CheckpointJournal journal = new CheckpointJournal(file, wiki)) {
+			assertEquals(4712L, journal.get(category, "Wels").getID());
+		}
+
+		try (CheckpointJournal journal = new CheckpointJournal(file, wiki)) {
+			journal.delete();
+		}
+		assertFalse(Files.exists(file));
+	}
+}
@@ -0,0 +1,93 @@
+package de.wikipedia.dealerofsalvation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import org.junit.Test;
+import org.wikipedia.Wiki;
+import org.wikipedia.Wiki.Revision;
+
+public class EntryStoreTest {
+
+	private final Wiki wiki = Wiki.newSession("de.wikipedia.org");
+
+	private final MaintenanceCategory category = new MaintenanceCategory(
+			"Belege fehlen", true, "Belege");
+
+	@Test
+	public void testSaveAndLoad() throws Exception {
+		Path dir = Files.createTempDirectory("entrystore");
+		EntryStore store = new EntryStore(dir, wiki);
+		assertNull(store.load(category));
+
+		EntryStore.Snapshot saved = new EntryStore.Snapshot();
+		saved.pageRevids.put("Liste/Belege fehlen/2005", 4711L);
+		saved.pageRevids.put("Liste/Belege fehlen/2006", -1L);
+		saved.pageHashes.put("Liste/Belege fehlen/2005", EntryStore.hash(
+				"{{../../Intro}}"));
+		saved.entries.put("Bad Ischl", wiki.new Revision(123456789L,
+				OffsetDateTime.of(2005, 3, 1, 17, 30, 0, 0, ZoneOffset.UTC),
+				"Anonymous"));
+		saved.highWaterMark = OffsetDateTime.of(2023, 1, 2, 3, 4, 0, 0,
+				ZoneOffset.UTC);
+		saved.otherMembers = 2;
+		store.save(category, saved);
+
+		EntryStore.Snapshot snapshot = store.load(category);
+		assertEquals(saved.pageRevids, snapshot.pageRevids);
+		assertEquals(saved.pageHashes, snapshot.pageHashes);
+		assertEquals(saved.highWaterMark, snapshot.highWaterMark);
+		assertEquals(2, snapshot.otherMembers);
+		assertEquals(1, snapshot.entries.size());
+		Revision revision = snapshot.entries.get("Bad Ischl");
+		assertEquals(123456789L, revision.getID());
+		// Only the date is stored, just like on the list page
+		assertEquals(LocalDate.of(2005, 3, 1), revision.getTimestamp()
+				.toLocalDate());
+	}
+
+	@Test
+	public void testOldFormat() throws Exception {
+		Path dir = Files.createTempDirectory("entrystore");
+		Files.write(dir.resolve("Belege+fehlen.txt"),
+				"P\t4711\tListe/Belege fehlen/2005\n".getBytes("UTF-8"));
+		EntryStore.Snapshot snapshot = new EntryStore(dir, wiki)
+				.load(category);
+		assertEquals(4711L, (long) snapshot.pageRevids
+				.get("Liste/Belege fehlen/2005"));
+		assertTrue(snapshot.pageHashes.isEmpty());
+	}
+
+	@Test
+	public void testPage() throws Exception {
+		Path dir = Files.createTempDirectory("entrystore");
+		EntryStore store = new EntryStore(dir, wiki);
+		assertNull(store.loadPage("Liste"));
+		store.savePage("Liste", 4711L, EntryStore.hash("\u00dcbersicht"));
+		EntryStore.PageState page = store.loadPage("Liste");
+		assertEquals(4711L, page.revid);
+		assertEquals(EntryStore.hash("\u00dcbersicht"), page.hash);
+	}
+
+	@Test
+	public void testHash() {
+		// as the API reports it, sha1 of the UTF-8 bytes
+		assertEquals("da39a3ee5e6b4b0d3255bfef95601890afd80709",
+				EntryStore.hash(""));
+	}
+
+	@Test
+	public void testDamagedFile() throws Exception {
+		Path dir = Files.createTempDirectory("entrystore");
+		Files.write(dir.resolve("Belege+fehlen.txt"),
+				"E\tkeine Zahl\t2005-03-01\tBad Ischl\n".getBytes("UTF-8"));
+		assertNull(new EntryStore(dir, wiki).load(category));
+	}
+}
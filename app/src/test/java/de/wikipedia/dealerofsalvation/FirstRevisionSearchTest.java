@@ -0,0 +1,118 @@
+package de.wikipedia.dealerofsalvation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.wikipedia.Wiki;
+import org.wikipedia.Wiki.Revision;
+
+import de.wikipedia.dealerofsalvation.MaintenanceBot.NoMaintenanceTemplateFoundException;
+
+public class FirstRevisionSearchTest {
+
+	private static final OffsetDateTime NEWEST = OffsetDateTime.of(2020, 1,
+			1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+	private final Wiki wiki = Wiki.newSession("de.wikipedia.org");
+
+	private final List<MaintenanceCategory> categories = MaintenanceCategoryTest
+			.getSampleCategories();
+
+	/** newest first */
+	private final List<Revision> history = new ArrayList<>();
+
+	private final List<String> texts = new ArrayList<>();
+
+	private int scans;
+
+	private void add(String user, String text) {
+		history.add(wiki.new Revision(1000 - history.size(), NEWEST
+				.minusDays(history.size()), user, null, null, "Bad Ischl",
+				Integer.toHexString(text.hashCode()), false, false, false,
+				text.length()));
+		texts.add(text);
+	}
+
+	/** Feeds the history to all searches, like HistoryAnalyzer does. */
+	private void walk(List<FirstRevisionSearch> searches) {
+		for (int i = 0; i < history.size(); i++) {
+			Revision revision = history.get(i);
+			List<MaintenanceCategory> needed = new ArrayList<>();
+			for (FirstRevisionSearch search : searches) {
+				if (search.needsVerdict(revision)) {
+					needed.add(search.category);
+				}
+			}
+			Set<MaintenanceCategory> matching = Set.of();
+			if (!needed.isEmpty()) {
+				matching = MaintenanceCategory.matchAll(texts.get(i), needed);
+				scans++;
+			}
+			for (FirstRevisionSearch search : searches) {
+				search.offer(revision, matching.contains(search.category));
+			}
+		}
+	}
+
+	@Test
+	public void testTwoCategories() throws Exception {
+		add("A", "{{Belege}} {{Staatslastig|CH}}");
+		add("B", "{{Belege}} {{Staatslastig|CH}}");
+		add("C", "{{Belege}}");
+		add("D", "{{Belege}}");
+		add("E", "Text");
+		add("F", "Text");
+		FirstRevisionSearch belege = new FirstRevisionSearch(
+				categories.get(0), "Bad Ischl", null);
+		FirstRevisionSearch schweiz = new FirstRevisionSearch(
+				categories.get(1), "Bad Ischl", null);
+		walk(List.of(belege, schweiz));
+		assertEquals(history.get(3).getID(), belege.result().getID());
+		assertEquals(history.get(1).getID(), schweiz.result().getID());
+		// one scan per revision for both categories
+		assertTrue("scans " + scans, scans <= history.size());
+	}
+
+	@Test
+	public void testRvStart() throws Exception {
+		add("A", "Text");
+		add("B", "{{Belege}}");
+		add("C", "Text");
+		FirstRevisionSearch search = new FirstRevisionSearch(
+				categories.get(0), "Bad Ischl", NEWEST.minusDays(1));
+		walk(List.of(search));
+		assertEquals(history.get(1).getID(), search.result().getID());
+	}
+
+	@Test
+	public void testSameUserRevert() throws Exception {
+		add("A", "{{Belege}} Version 0");
+		add("A", "{{Belege}} Version 1");
+		add("B", "Version 2");
+		add("B", "Version 3");
+		add("A", "{{Belege}} Version 1");
+		add("C", "Version 5");
+		add("D", "Version 6");
+		FirstRevisionSearch search = new FirstRevisionSearch(
+				categories.get(0), "Bad Ischl", null);
+		walk(List.of(search));
+		assertEquals(history.get(4).getID(), search.result().getID());
+	}
+
+	@Test(expected = NoMaintenanceTemplateFoundException.class)
+	public void testNoTemplate() throws Exception {
+		add("A", "Text");
+		add("B", "{{Belege}}");
+		FirstRevisionSearch search = new FirstRevisionSearch(
+				categories.get(0), "Bad Ischl", null);
+		walk(List.of(search));
+		search.result();
+	}
+}
@@ -0,0 +1,129 @@
+package de.wikipedia.dealerofsalvation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.wikipedia.Wiki;
+import org.wikipedia.Wiki.Revision;
+
+public class HistoryAnalyzerTest {
+
+	/** Keeps the walks until they are run by the test */
+	private static class QueueingExecutor extends AbstractExecutorService {
+
+		final List<Runnable> tasks = new ArrayList<>();
+
+		@Override
+		public void execute(Runnable command) {
+			tasks.add(command);
+		}
+
+		@Override
+		public void shutdown() {
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			return tasks;
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return false;
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return false;
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) {
+			return true;
+		}
+	}
+
+	/** Counts the requests and fails them */
+	private static class OfflineWiki extends Wiki {
+
+		int requests;
+
+		OfflineWiki() {
+			super("de.wikipedia.org", "/w", "https://");
+		}
+
+		@Override
+		public InputStream apiCallToStream(Map<String, String> getparams,
+				Map<String, Object> postparams, String caller)
+				throws IOException {
+			requests++;
+			throw new IOException("offline");
+		}
+	}
+
+	private final QueueingExecutor walkers = new QueueingExecutor();
+
+	private final OfflineWiki wiki = new OfflineWiki();
+
+	private final HistoryAnalyzer analyzer = new HistoryAnalyzer(wiki,
+			walkers, null, true, false);
+
+	private final MaintenanceCategory belege = new MaintenanceCategory(
+			"Belege fehlen", true, "Belege");
+
+	private final MaintenanceCategory neutral = new MaintenanceCategory(
+			"Widerspruch", true, "Widerspruch");
+
+	@Test
+	public void testQueuedWalkIsJoined() {
+		analyzer.request(belege, "Bad Ischl", null);
+		analyzer.request(neutral, "Bad Ischl", null);
+		analyzer.request(neutral, "Linz", null);
+		assertEquals(2, walkers.tasks.size());
+	}
+
+	@Test
+	public void testStartedWalkIsNotJoined() {
+		CompletableFuture<Revision> first = analyzer.request(belege,
+				"Bad Ischl", null);
+		first.cancel(true);
+		walkers.tasks.get(0).run();
+		analyzer.request(neutral, "Bad Ischl", null);
+		assertEquals(2, walkers.tasks.size());
+	}
+
+	@Test
+	public void testPartlyCancelledWalkRuns() {
+		analyzer.request(belege, "Bad Ischl", null).cancel(true);
+		CompletableFuture<Revision> other = analyzer.request(neutral,
+				"Bad Ischl", null);
+		walkers.tasks.get(0).run();
+		assertTrue(wiki.requests > 0);
+		assertTrue(other.isCompletedExceptionally());
+	}
+
+	@Test
+	public void testCancelledWalkIsDropped() {
+		List<CompletableFuture<Revision>> requests = List.of(analyzer.request(
+				belege, "Bad Ischl", null), analyzer.request(neutral,
+				"Bad Ischl", null));
+		for (CompletableFuture<Revision> request : requests) {
+			request.cancel(true);
+		}
+		walkers.tasks.get(0).run();
+		assertEquals(0, wiki.requests);
+		for (CompletableFuture<Revision> request : requests) {
+			assertTrue(request.isCancelled());
+		}
+	}
+}
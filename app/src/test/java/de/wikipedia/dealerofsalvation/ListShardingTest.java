@@ -0,0 +1,177 @@
+package de.wikipedia.dealerofsalvation;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.wikipedia.Wiki;
+import org.wikipedia.Wiki.Revision;
+
+public class ListShardingTest {
+
+	private final Wiki wiki = Wiki.newSession("de.wikipedia.org");
+
+	/**
+	 * header 5 bytes, lines 10 bytes: ten entries per page, pages of up to
+	 * two entries are joined up to four
+	 */
+	private final ListSharding sharding = new ListSharding(105, 5,
+			entry -> 10, 2026);
+
+	private final Map<String, Revision> entries = new HashMap<>();
+
+	private int titles;
+
+	@Test
+	public void testSmallList() {
+		add(2010, 1, 1);
+		add(2012, 5, 1);
+		List<ListSharding.Shard> shards = shard(false, List.of());
+		assertEquals(1, shards.size());
+		assertNull(shards.get(0).label);
+		assertEquals(2, shards.get(0).entries.size());
+		assertTrue(sharding.shard(new HashMap<>(), true, List.of()).isEmpty());
+	}
+
+	@Test
+	public void testQuietYearsShareAPage() {
+		add(2005, 1, 4);
+		add(2006, 1, 4);
+		add(2008, 1, 4);
+		add(2010, 1, 4);
+		List<ListSharding.Shard> shards = shard(true, List.of());
+		assertEquals(asList("2005\u20132007", "2008\u20132026"),
+				labels(shards));
+		assertTrue(shards.get(1).covers(2010));
+		assertFalse(shards.get(1).covers(2009));
+	}
+
+	@Test
+	public void testLargeYearByMonth() {
+		add(2015, 1, 6);
+		add(2015, 2, 3);
+		add(2015, 3, 3);
+		add(2016, 1, 2);
+		List<ListSharding.Shard> shards = shard(true, List.of());
+		assertEquals(asList("2015-01\u20132015-02", "2015-03\u20132026-12"),
+				labels(shards));
+		assertTrue(shards.get(1).covers(2015));
+		assertTrue(shards.get(1).covers(2016));
+	}
+
+	@Test
+	public void testLargeMonthByTitle() {
+		add(2020, 4, 25);
+		List<ListSharding.Shard> shards = shard(false, List.of());
+		assertEquals(asList("2020-04", "2020-04 ab T10",
+				"2020-04 ab T20\u20132026-12"), labels(shards));
+		assertEquals(10, shards.get(0).entries.size());
+		assertTrue(shards.get(1).entries.containsKey("T10"));
+		// kept, although cutting anew would move the later titles along
+		entries.remove("T05");
+		assertEquals(labels(shards), labels(shard(false, labels(shards))));
+	}
+
+	@Test
+	public void testNewEntryChangesOnePage() {
+		add(2005, 1, 8);
+		add(2006, 1, 8);
+		add(2007, 1, 8);
+		List<ListSharding.Shard> before = shard(true, List.of());
+		assertEquals(asList("2005", "2006", "2007\u20132026"), labels(before));
+
+		add(2005, 6, 1);
+		List<ListSharding.Shard> after = shard(true, labels(before));
+		assertEquals(labels(before), labels(after));
+		int changed = 0;
+		for (int i = 0; i < before.size(); i++) {
+			if (!before.get(i).entries.equals(after.get(i).entries)) {
+				changed++;
+			}
+		}
+		assertEquals(1, changed);
+	}
+
+	@Test
+	public void testLargePageIsCut() {
+		add(2005, 1, 8);
+		add(2006, 1, 8);
+		List<String> labels = labels(shard(true, List.of()));
+		assertEquals(asList("2005", "2006\u20132026"), labels);
+		add(2006, 7, 3);
+		// only the page grown too large is cut
+		assertEquals(asList("2005", "2006-01\u20132006-06",
+				"2006-07\u20132026-12"), labels(shard(true, labels)));
+	}
+
+	@Test
+	public void testSmallPageIsJoined() {
+		add(2005, 1, 8);
+		add(2006, 1, 3);
+		add(2007, 1, 8);
+		List<String> labels = asList("2005", "2006", "2007\u20132026");
+		assertEquals(labels, labels(shard(true, labels)));
+		// below a quarter, but no neighbour to join without passing half
+		entries.remove("T08");
+		assertEquals(labels, labels(shard(true, labels)));
+		entries.keySet().removeIf(title -> title.compareTo("T11") > 0);
+		assertEquals(asList("2005", "2006\u20132026"), labels(shard(true,
+				labels)));
+	}
+
+	@Test
+	public void testBackToOnePage() {
+		add(2005, 1, 6);
+		add(2006, 1, 6);
+		List<String> labels = labels(shard(false, List.of()));
+		assertEquals(asList("2005", "2006\u20132026"), labels);
+		entries.keySet().removeIf(title -> title.compareTo("T07") > 0);
+		// fits, but not well below the target
+		assertEquals(labels, labels(shard(false, labels)));
+		entries.keySet().removeIf(title -> title.compareTo("T03") > 0);
+		assertNull(shard(false, labels).get(0).label);
+	}
+
+	@Test
+	public void testUnknownPagesIgnored() {
+		add(2005, 1, 8);
+		add(2006, 1, 8);
+		assertEquals(asList("2005", "2006\u20132026"), labels(shard(true,
+				List.of("2005", "2006-03 (2)", "Intro"))));
+	}
+
+	/** Adds entries with consecutive titles */
+	private void add(int year, int month, int count) {
+		for (int i = 0; i < count; i++) {
+			entries.put(String.format("T%02d", titles++), revision(year,
+					month));
+		}
+	}
+
+	private Revision revision(int year, int month) {
+		return wiki.new Revision(1, OffsetDateTime.of(year, month, 1, 0, 0, 0,
+				0, ZoneOffset.UTC), null);
+	}
+
+	private List<ListSharding.Shard> shard(boolean split, List<String> previous) {
+		return sharding.shard(entries, split, previous);
+	}
+
+	private static List<String> labels(List<ListSharding.Shard> shards) {
+		List<String> result = new ArrayList<>();
+		for (ListSharding.Shard shard : shards) {
+			result.add(shard.label);
+		}
+		return result;
+	}
+}
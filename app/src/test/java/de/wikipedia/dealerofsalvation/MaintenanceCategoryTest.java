@@ -39,6 +39,66 @@ public class MaintenanceCategoryTest {
 		assertNull(getWartungskategorie("asdf\n<!--\n{{Belege}}"));
 	}
 
+	@Test
+	public void testNormalization() {
+		assertWartung("Belege fehlen", "asdf\n{{Vorlage:Belege_fehlen}}\nafsd");
+		assertWartung("Belege fehlen", "asdf\n{{ Belege  fehlen\n|x}}\nafsd");
+		assertWartung("Belege fehlen", "{{{Belege}}}");
+		assertWartung("Belege fehlen",
+				"[[Kategorie:Wikipedia:Belege_fehlen]]");
+		assertWartung("Schweizlastig", "{{Staatslastig |CH-Bezug}}");
+		assertNull(getWartungskategorie("{{Staatslastig}}"));
+		assertNull(getWartungskategorie("{{Staatslastig|AT}}"));
+		assertNull(getWartungskategorie("{{Staatslastig|land=CH}}"));
+		assertNull(getWartungskategorie("{{Belegexyz}}"));
+		assertNull(getWartungskategorie("[[Wikipedia:Belege fehlen]]"));
+	}
+
+	/** Where the scanner differs from the regular expressions used before */
+	@Test
+	public void testBeyondPatterns() {
+		// \[\[Kategorie:...\]\] missed the sort key
+		assertWartung("Belege fehlen",
+				"[[Kategorie:Wikipedia:Belege fehlen|Ischl, Bad]]");
+		assertWartung("Belege fehlen",
+				"[[Kategorie:Wikipedia:Belege fehlen| ]]");
+		// Staatslastig\|1=CH missed the blanks, and any named parameter "1"
+		// counts as the first one
+		assertWartung("Schweizlastig", "{{Staatslastig|1= CH}}");
+		assertWartung("Schweizlastig", "{{Staatslastig| 1=CH }}");
+		assertNull(getWartungskategorie("{{Staatslastig|1=AT}}"));
+		assertNull(getWartungskategorie("{{Staatslastig|2=CH}}"));
+	}
+
+	@Test
+	public void testComments() {
+		assertWartung("Belege fehlen", "{{Bel<!-- x -->ege}}");
+		assertWartung("Belege fehlen", "<!-->{{Belege}}");
+		assertWartung("Belege fehlen", "<!--- -->{{Belege}}<!-- -- -->");
+		assertWartung("Belege fehlen", "<!-- a --><!-- b -->{{Belege}}");
+		assertWartung("Belege fehlen", "<!--->{{Belege}}");
+		// The text around a removed comment forms a new, unterminated one
+		assertNull(getWartungskategorie("<!<!-- x -->--\n{{Belege}}"));
+		assertNull(getWartungskategorie("<!-<!-- x -->-\n{{Belege}}"));
+	}
+
+	@Test
+	public void testChunks() {
+		List<MaintenanceCategory> categories = getSampleCategories();
+		String text = "{{Bel<!-- x -->ege}} {{Staatslastig | CH}} Rest";
+		// one character per chunk, comment and templates span chunks
+		MaintenanceCategory.Matcher matcher = new MaintenanceCategory.Matcher(
+				categories);
+		int fed = 0;
+		while (fed < text.length()
+				&& !matcher.feed(text.toCharArray(), fed, 1)) {
+			fed++;
+		}
+		assertEquals(2, matcher.getResult().size());
+		// stopped at the "}}" of the second template
+		assertEquals(text.indexOf("Rest") - 2, fed);
+	}
+
 	private static void assertWartung(String kat, String text) {
 		assertEquals(kat, getWartungskategorie(text));
 	}
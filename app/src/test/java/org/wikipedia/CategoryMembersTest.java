@@ -0,0 +1,123 @@
+package org.wikipedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.wikipedia.Wiki.CategoryMember;
+
+public class CategoryMembersTest {
+
+	/**
+	 * Answers site info requests with a small German wiki and member queries
+	 * with canned pages, continuing with the page number.
+	 */
+	private static class CannedWiki extends Wiki {
+
+		private final List<String> pages;
+
+		final List<Map<String, String>> requests = new ArrayList<>();
+
+		CannedWiki(String... pages) {
+			super("de.wikipedia.org", "/w", "https://");
+			initVars();
+			this.pages = List.of(pages);
+		}
+
+		@Override
+		public InputStream apiCallToStream(Map<String, String> getparams,
+				Map<String, Object> postparams, String caller) {
+			String xml;
+			if ("siteinfo".equals(getparams.get("meta"))) {
+				xml = "<?xml version=\"1.0\"?><api><query>"
+						+ "<general case=\"first-letter\" timezone=\"UTC\""
+						+ " generator=\"MediaWiki 1.41\" lang=\"de\""
+						+ " wikiid=\"dewiki\"></general>"
+						+ "<namespaces><ns id=\"0\" case=\"first-letter\""
+						+ " content=\"\" />"
+						+ "<ns id=\"4\" case=\"first-letter\""
+						+ " canonical=\"Project\">Wikipedia</ns>"
+						+ "<ns id=\"14\" case=\"first-letter\""
+						+ " canonical=\"Category\">Kategorie</ns>"
+						+ "</namespaces><namespacealiases /></query>"
+						+ "<extensions><ext name=\"CirrusSearch\" /></extensions>"
+						+ "</api>";
+			} else {
+				requests.add(Map.copyOf(getparams));
+				int page = Integer.parseInt(getparams.getOrDefault(
+						"cmcontinue", "0"));
+				String cont = page + 1 < pages.size()
+						? "<continue cmcontinue=\"" + (page + 1)
+								+ "\" continue=\"-||\" />" : "";
+				xml = "<?xml version=\"1.0\"?><api>" + cont
+						+ "<query><categorymembers>" + pages.get(page)
+						+ "</categorymembers></query></api>";
+			}
+			return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private static String cm(String title) {
+		return "<cm ns=\"0\" title=\"" + title
+				+ "\" timestamp=\"2020-01-01T00:00:00Z\" />";
+	}
+
+	private static final String CATEGORY = "Kategorie:Wikipedia:Belege fehlen";
+
+	@Test
+	public void testContinuation() throws Exception {
+		CannedWiki wiki = new CannedWiki(cm("A") + cm("B &amp; C"), cm("D"));
+		List<String> titles = new ArrayList<>();
+		wiki.forEachCategoryMember(CATEGORY, member -> titles.add(member
+				.getTitle()));
+		assertEquals(List.of("A", "B & C", "D"), titles);
+		assertEquals(2, wiki.requests.size());
+		assertEquals("Category:Wikipedia:Belege fehlen", wiki.requests.get(0)
+				.get("cmtitle"));
+		assertFalse(wiki.requests.get(0).containsKey("cmcontinue"));
+		assertEquals("1", wiki.requests.get(1).get("cmcontinue"));
+		assertEquals("-||", wiki.requests.get(1).get("continue"));
+	}
+
+	@Test
+	public void testGetCategoryMembers() throws Exception {
+		CannedWiki wiki = new CannedWiki(cm("A"), cm("B"), cm("C"));
+		List<String> titles = wiki.getCategoryMembers(CATEGORY).stream().map(
+				CategoryMember::getTitle).collect(Collectors.toList());
+		assertEquals(List.of("A", "B", "C"), titles);
+		assertEquals(3, wiki.requests.size());
+	}
+
+	@Test
+	public void testNamespaces() throws Exception {
+		CannedWiki wiki = new CannedWiki(cm("A"));
+		wiki.forEachCategoryMember(CATEGORY, member -> {
+		});
+		assertEquals(1, wiki.streamCategoryMembers(CATEGORY).count());
+		wiki.forEachCategoryMember(CATEGORY, member -> {
+		}, Wiki.MAIN_NAMESPACE);
+		wiki.streamCategoryMembers(CATEGORY, Wiki.MAIN_NAMESPACE).count();
+		// both paths build the same query
+		assertFalse(wiki.requests.get(0).containsKey("cmnamespace"));
+		assertEquals(wiki.requests.get(0), wiki.requests.get(1));
+		assertEquals("0", wiki.requests.get(2).get("cmnamespace"));
+		assertEquals(wiki.requests.get(2), wiki.requests.get(3));
+	}
+
+	@Test(expected = UnknownError.class)
+	public void testError() throws Exception {
+		CannedWiki wiki = new CannedWiki(cm("A"),
+				"</categorymembers><error code=\"internal_api_error\""
+						+ " info=\"Fehler &quot;x&quot;\" /><categorymembers>");
+		wiki.forEachCategoryMember(CATEGORY, member -> {
+		});
+	}
+}
@@ -0,0 +1,81 @@
+package org.wikipedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+public class ConcurrencyControllerTest {
+
+	@Test
+	public void testLimit() throws InterruptedException {
+		ConcurrencyController controller = new ConcurrencyController(2, 4);
+		long first = controller.acquire();
+		controller.acquire();
+		CompletableFuture<Long> third = controller.acquireAsync();
+		assertFalse(third.isDone());
+		controller.release(first, true);
+		assertTrue(third.isDone());
+		assertEquals(2, controller.getInFlight());
+	}
+
+	@Test
+	public void testGrowth() throws InterruptedException {
+		ConcurrencyController controller = new ConcurrencyController(1, 3);
+		for (int i = 0; i < 10; i++) {
+			saturate(controller, true);
+		}
+		assertEquals(3, controller.getLimit(), 0);
+		// errors don't count
+		controller = new ConcurrencyController(1, 3);
+		for (int i = 0; i < 10; i++) {
+			saturate(controller, false);
+		}
+		assertEquals(1, controller.getLimit(), 0);
+		// nor does a limit that isn't reached
+		controller = new ConcurrencyController(2, 3);
+		for (int i = 0; i < 10; i++) {
+			controller.release(controller.acquire(), true);
+		}
+		assertEquals(2, controller.getLimit(), 0);
+	}
+
+	private static void saturate(ConcurrencyController controller,
+			boolean answered) throws InterruptedException {
+		long[] starts = new long[(int) controller.getLimit()];
+		for (int i = 0; i < starts.length; i++) {
+			starts[i] = controller.acquire();
+		}
+		for (long start : starts) {
+			controller.release(start, answered);
+		}
+	}
+
+	@Test
+	public void testBackOff() throws InterruptedException {
+		ConcurrencyController controller = new ConcurrencyController(4, 4);
+		controller.backOff(60);
+		// the others in flight report the same, once is enough
+		controller.backOff(60);
+		assertEquals(2, controller.getLimit(), 0);
+		assertEquals(1, controller.getBackOffs());
+		CompletableFuture<Long> permit = controller.acquireAsync();
+		assertFalse(permit.isDone());
+		// given up, the permit isn't handed out later
+		permit.cancel(false);
+		assertEquals(0, controller.getInFlight());
+	}
+
+	@Test
+	public void testPauseEnds() throws Exception {
+		ConcurrencyController controller = new ConcurrencyController(4, 4);
+		controller.pause(1);
+		long start = System.nanoTime();
+		controller.acquire();
+		assertTrue(System.nanoTime() - start >= 900_000_000L);
+		assertEquals(4, controller.getLimit(), 0);
+	}
+}
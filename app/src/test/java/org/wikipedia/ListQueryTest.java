@@ -0,0 +1,91 @@
+package org.wikipedia;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.wikipedia.Wiki.Revision;
+
+public class ListQueryTest {
+
+	/** Answers with canned pages, continuing with the page number. */
+	private static class CannedWiki extends Wiki {
+
+		private final List<String> pages;
+
+		final List<Map<String, String>> requests = new ArrayList<>();
+
+		CannedWiki(String... pages) {
+			super("de.wikipedia.org", "/w", "https://");
+			initVars();
+			this.pages = List.of(pages);
+		}
+
+		@Override
+		public InputStream apiCallToStream(Map<String, String> getparams,
+				Map<String, Object> postparams, String caller) {
+			requests.add(Map.copyOf(getparams));
+			int page = Integer.parseInt(getparams.getOrDefault("rvcontinue",
+					"0"));
+			String cont = page + 1 < pages.size() ? "<continue rvcontinue=\""
+					+ (page + 1) + "\" continue=\"||\" />" : "";
+			String xml = "<?xml version=\"1.0\"?><api>" + cont
+					+ "<query><pages><page title=\"Bad Ischl\"><revisions>"
+					+ pages.get(page) + "</revisions></page></pages></query></api>";
+			return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private static String rev(long revid, String user) {
+		return "<rev revid=\"" + revid + "\" parentid=\"" + (revid - 1)
+				+ "\" user=\"" + user + "\" timestamp=\"2020-01-01T00:00:00Z\""
+				+ " size=\"10\" sha1=\"abc\" comment=\"a &amp; b\""
+				+ " parsedcomment=\"a &amp;amp; b\" minor=\"\">"
+				+ "<tags><tag>mw-rollback</tag></tags></rev>";
+	}
+
+	private final CannedWiki wiki = new CannedWiki(rev(9, "A") + rev(8, "B"),
+			rev(7, "C") + rev(6, "D"), rev(5, "E"));
+
+	@Test
+	public void testAllPages() {
+		List<Long> revids = wiki.streamListQuery("rv", Map.of(), "test", -1,
+				"rev", reader -> wiki.parseRevision(reader, "Bad Ischl"))
+				.map(Revision::getID).collect(Collectors.toList());
+		assertEquals(List.of(9L, 8L, 7L, 6L, 5L), revids);
+		assertEquals(3, wiki.requests.size());
+	}
+
+	@Test
+	public void testEarlyTermination() {
+		List<Revision> revisions = wiki.streamListQuery("rv", Map.of(),
+				"test", -1, "rev",
+				reader -> wiki.parseRevision(reader, "Bad Ischl")).limit(3)
+				.collect(Collectors.toList());
+		assertEquals(3, revisions.size());
+		// the third page isn't requested
+		assertEquals(2, wiki.requests.size());
+		assertEquals("1", wiki.requests.get(1).get("rvcontinue"));
+	}
+
+	@Test
+	public void testParseRevision() {
+		Revision revision = wiki.streamListQuery("rv", Map.of(), "test", 1,
+				"rev", reader -> wiki.parseRevision(reader, "Bad Ischl"))
+				.findFirst().get();
+		assertEquals(9L, revision.getID());
+		assertEquals("A", revision.getUser());
+		assertEquals("a & b", revision.getComment());
+		assertEquals("abc", revision.getSha1());
+		assertEquals(List.of("mw-rollback"), revision.getTags());
+		assertEquals(true, revision.isMinor());
+		assertEquals("1", wiki.requests.get(0).get("rvlimit"));
+	}
+}
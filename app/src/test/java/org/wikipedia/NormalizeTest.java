@@ -0,0 +1,76 @@
+package org.wikipedia;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class NormalizeTest {
+
+	/** Answers every request with the site info of a small German wiki. */
+	private static class SiteInfoWiki extends Wiki {
+
+		int requests;
+
+		SiteInfoWiki() {
+			super("de.wikipedia.org", "/w", "https://");
+			initVars();
+		}
+
+		@Override
+		public InputStream apiCallToStream(Map<String, String> getparams,
+				Map<String, Object> postparams, String caller) {
+			requests++;
+			String xml = "<?xml version=\"1.0\"?><api><query>"
+					+ "<general case=\"first-letter\" timezone=\"Europe/Berlin\""
+					+ " generator=\"MediaWiki 1.41\" lang=\"de\" wikiid=\"dewiki\"></general>"
+					+ "<namespaces>"
+					+ "<ns id=\"0\" case=\"first-letter\" content=\"\" />"
+					+ "<ns id=\"2\" case=\"first-letter\" subpages=\"\""
+					+ " canonical=\"User\">Benutzer</ns>"
+					+ "<ns id=\"10\" case=\"first-letter\" subpages=\"\""
+					+ " canonical=\"Template\">Vorlage</ns>"
+					+ "<ns id=\"14\" case=\"first-letter\""
+					+ " canonical=\"Category\">Kategorie</ns>"
+					+ "</namespaces><namespacealiases />"
+					+ "</query><extensions><ext name=\"CirrusSearch\" />"
+					+ "</extensions></api>";
+			return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private final SiteInfoWiki wiki = new SiteInfoWiki();
+
+	@Test
+	public void testNamespaces() {
+		assertEquals(Wiki.CATEGORY_NAMESPACE, wiki.namespace("kategorie:X"));
+		assertEquals(Wiki.CATEGORY_NAMESPACE, wiki.namespace("CATEGORY:X"));
+		assertEquals(Wiki.MAIN_NAMESPACE, wiki.namespace("Nirgends:X"));
+		assertEquals("Benutzer", wiki.namespaceIdentifier(Wiki.USER_NAMESPACE));
+		assertEquals("", wiki.namespaceIdentifier(100));
+		assertEquals(1, wiki.requests);
+	}
+
+	@Test
+	public void testNormalize() {
+		assertEquals("Kategorie:Wikipedia:Belege fehlen",
+				wiki.normalize(":category:wikipedia:Belege_fehlen#Abschnitt"));
+		assertEquals("Vorlage:Belege fehlen",
+				wiki.normalize("template:belege \t\n fehlen"));
+		assertEquals("Bad Ischl", wiki.normalize("bad  Ischl"));
+		// cached
+		assertEquals("Bad Ischl", wiki.normalize("bad  Ischl"));
+		// decomposed umlaut
+		assertEquals("\u00dcberlingen", wiki.normalize("U\u0308berlingen"));
+		assertEquals(1, wiki.requests);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testIllegal() {
+		wiki.normalize("Bad [Ischl]");
+	}
+}
@@ -0,0 +1,103 @@
+package org.wikipedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class RateLimitTest {
+
+	private static final String THROTTLED = "<?xml version=\"1.0\"?><api>"
+			+ "<error code=\"ratelimited\" info=\"You've exceeded your rate"
+			+ " limit.\" /></api>";
+
+	private static final String ANSWER = "<?xml version=\"1.0\"?><api>"
+			+ "<query><general /></query></api>";
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	/**
+	 * Answers the first request with ratelimited and status 200, the others
+	 * normally.
+	 */
+	private HttpServer start() throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress(
+				"localhost", 0), 0);
+		server.createContext("/w/api.php", exchange -> {
+			byte[] body = (requests.getAndIncrement() == 0 ? THROTTLED
+					: ANSWER).getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Retry-After", "0");
+			exchange.sendResponseHeaders(200, body.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		return server;
+	}
+
+	private static Wiki wiki(HttpServer server) {
+		Wiki wiki = new Wiki("localhost:" + server.getAddress().getPort(),
+				"/w", "http://");
+		wiki.initVars();
+		return wiki;
+	}
+
+	@Test
+	public void testSync() throws Exception {
+		HttpServer server = start();
+		try {
+			Wiki wiki = wiki(server);
+			String response = wiki.makeApiCall(Map.of("action", "query"),
+					null, "test");
+			assertTrue(response.contains("<general />"));
+			assertEquals(2, requests.get());
+			assertEquals(1, wiki.getConcurrencyController().getBackOffs());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testAsync() throws Exception {
+		HttpServer server = start();
+		try {
+			Wiki wiki = wiki(server);
+			InputStream stream = Wiki.await(wiki.apiCallAsync(Map.of(
+					"action", "query"), null, "test"));
+			try (stream) {
+				assertTrue(new String(stream.readAllBytes(),
+						StandardCharsets.UTF_8).contains("<general />"));
+			}
+			assertEquals(2, requests.get());
+			assertEquals(1, wiki.getConcurrencyController().getBackOffs());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testRetryAfter() {
+		assertEquals(5, Wiki.retryAfter(headers("5")));
+		assertEquals(10, Wiki.retryAfter(headers(
+				"Wed, 21 Oct 2015 07:28:00 GMT")));
+		assertEquals(10, Wiki.retryAfter(HttpHeaders.of(Map.of(),
+				(name, value) -> true)));
+	}
+
+	private static HttpHeaders headers(String retryAfter) {
+		return HttpHeaders.of(Map.of("Retry-After", List.of(retryAfter)),
+				(name, value) -> true);
+	}
+}
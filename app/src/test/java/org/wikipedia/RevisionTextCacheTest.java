@@ -0,0 +1,45 @@
+package org.wikipedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+public class RevisionTextCacheTest {
+
+	@Test
+	public void testLeastRecentlyUsed() {
+		RevisionTextCache cache = new RevisionTextCache(10, null);
+		cache.put(1, "aaaa");
+		cache.put(2, "bbbb");
+		cache.get(1);
+		// doesn't fit, so 2 goes
+		cache.put(3, "cccc");
+		assertEquals("aaaa", cache.get(1));
+		assertNull(cache.get(2));
+		assertEquals("cccc", cache.get(3));
+		assertEquals(3, cache.getMemoryHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testDisk() throws Exception {
+		Path directory = Files.createTempDirectory("revisions");
+		RevisionTextCache cache = new RevisionTextCache(10, directory);
+		cache.put(4711, "{{Belege}} Bad Ischl \u2013 Kurort");
+		cache.put(4712, null);
+		// too long for memory, but on disk, also for the next run
+		RevisionTextCache next = new RevisionTextCache(100, directory);
+		assertTrue(next.contains(4711));
+		assertEquals("{{Belege}} Bad Ischl \u2013 Kurort", next.get(4711));
+		assertEquals("{{Belege}} Bad Ischl \u2013 Kurort", next.get(4711));
+		assertNull(next.get(4712));
+		assertEquals(1, next.getDiskHits());
+		assertEquals(1, next.getMemoryHits());
+		assertEquals(1, next.getMisses());
+	}
+}
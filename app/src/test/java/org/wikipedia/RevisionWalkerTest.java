@@ -0,0 +1,137 @@
+package org.wikipedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+public class RevisionWalkerTest {
+
+	/**
+	 * Answers with canned pages of revisions, continuing with the page number
+	 * like the API does without rawcontinue.
+	 */
+	private static class CannedWiki extends Wiki {
+
+		private final List<String> pages;
+
+		final List<Map<String, String>> requests = new ArrayList<>();
+
+		final List<Map<String, String>> asyncRequests = new ArrayList<>();
+
+		CannedWiki(String... pages) {
+			super("de.wikipedia.org", "/w", "https://");
+			initVars();
+			this.pages = List.of(pages);
+		}
+
+		@Override
+		public String normalize(String s) {
+			return s;
+		}
+
+		@Override
+		public InputStream apiCallToStream(Map<String, String> getparams,
+				Map<String, Object> postparams, String caller) {
+			requests.add(Map.copyOf(getparams));
+			return page(getparams);
+		}
+
+		@Override
+		public CompletableFuture<InputStream> apiCallAsync(
+				Map<String, String> getparams, Map<String, Object> postparams,
+				String caller) {
+			asyncRequests.add(Map.copyOf(getparams));
+			return CompletableFuture.completedFuture(page(getparams));
+		}
+
+		private InputStream page(Map<String, String> getparams) {
+			int page = Integer.parseInt(getparams.getOrDefault("rvcontinue",
+					"0"));
+			if (page > 0) {
+				assertEquals("||", getparams.get("continue"));
+			}
+			String cont = page + 1 < pages.size() ? "<continue rvcontinue=\""
+					+ (page + 1) + "\" continue=\"||\" />" : "";
+			String xml = "<?xml version=\"1.0\"?><api batchcomplete=\"\">"
+					+ cont + "<query><pages><page title=\"Bad Ischl\"><revisions>"
+					+ pages.get(page) + "</revisions></page></pages></query></api>";
+			return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private static String rev(long revid, boolean content) {
+		String start = "<rev revid=\"" + revid + "\" user=\"A\""
+				+ " timestamp=\"2020-01-01T00:00:00Z\" size=\"10\" sha1=\"s"
+				+ revid + "\"";
+		return content ? start + ">Text " + revid + "</rev>" : start + " />";
+	}
+
+	@Test
+	public void testStreamingPages() throws Exception {
+		CannedWiki wiki = new CannedWiki(rev(9, true) + rev(8, true),
+				rev(7, true), rev(6, true));
+		List<Long> revids = new ArrayList<>();
+		try (Wiki.RevisionWalker walker = wiki.new RevisionWalker("Bad Ischl",
+				null)) {
+			while (walker.next()) {
+				revids.add(walker.revision().getID());
+				if (revids.size() == 3) {
+					assertEquals("Text 7", walker.text());
+				}
+			}
+		}
+		assertEquals(List.of(9L, 8L, 7L, 6L), revids);
+		assertEquals(3, wiki.requests.size());
+		assertEquals("2", wiki.requests.get(2).get("rvcontinue"));
+	}
+
+	@Test
+	public void testMetadataPages() throws Exception {
+		CannedWiki wiki = new CannedWiki(rev(9, false) + rev(8, false),
+				rev(7, false) + rev(6, false), rev(5, false));
+		List<Long> revids = new ArrayList<>();
+		try (Wiki.RevisionWalker walker = wiki.new RevisionWalker("Bad Ischl",
+				null, true)) {
+			while (walker.next()) {
+				revids.add(walker.revision().getID());
+			}
+		}
+		assertEquals(List.of(9L, 8L, 7L, 6L, 5L), revids);
+		assertEquals(3, wiki.requests.size() + wiki.asyncRequests.size());
+	}
+
+	@Test
+	public void testPrefetch() throws Exception {
+		CannedWiki wiki = new CannedWiki(rev(9, false) + rev(8, false),
+				rev(7, false) + rev(6, false), rev(5, false));
+		try (Wiki.RevisionWalker walker = wiki.new RevisionWalker("Bad Ischl",
+				null, true)) {
+			assertTrue(walker.next());
+			assertEquals(9L, walker.revision().getID());
+			// page 2 is on its way while page 1 is still being consumed
+			assertEquals(1, wiki.requests.size());
+			assertEquals(1, wiki.asyncRequests.size());
+			assertEquals("1", wiki.asyncRequests.get(0).get("rvcontinue"));
+			assertTrue(walker.next());
+			assertEquals(8L, walker.revision().getID());
+			while (walker.next()) {
+				// walk on
+			}
+			assertFalse(walker.next());
+		}
+		// all continuation pages were requested ahead
+		assertEquals(1, wiki.requests.size());
+		assertEquals(2, wiki.asyncRequests.size());
+		assertEquals("2", wiki.asyncRequests.get(1).get("rvcontinue"));
+	}
+}
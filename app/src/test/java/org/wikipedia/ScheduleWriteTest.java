@@ -0,0 +1,47 @@
+package org.wikipedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Test;
+
+public class ScheduleWriteTest {
+
+	private final Wiki wiki = new Wiki("de.wikipedia.org", "/w", "https://") {
+	};
+
+	@Test
+	public void testOrder() throws Exception {
+		List<Integer> done = new ArrayList<>();
+		List<CompletableFuture<Void>> writes = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			int n = i;
+			writes.add(wiki.scheduleWrite(() -> done.add(n)));
+		}
+		writes.get(4).get();
+		assertEquals(List.of(0, 1, 2, 3, 4), done);
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		CompletableFuture<Void> failed = wiki.scheduleWrite(() -> {
+			throw new IOException("edit conflict");
+		});
+		// later writes still run
+		wiki.scheduleWrite(() -> {
+		}).get();
+		try {
+			failed.get();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+			return;
+		}
+		throw new AssertionError("not failed");
+	}
+}
@@ -0,0 +1,65 @@
+package org.wikipedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class XmlAttributesTest {
+
+	@Test
+	public void testParse() {
+		String xml = "<api><cm pageid=\"24958584\" ns=\"3\" title=\"A &amp; B\""
+				+ " parsedtitle=\"x\" hidden=\"\" /><cm title=\"C\"/></api>";
+		XmlAttributes attributes = new XmlAttributes();
+		assertTrue(attributes.parse(xml, 1));
+		assertEquals("A & B", attributes.get("title"));
+		assertEquals("3", attributes.get("ns"));
+		assertTrue(attributes.has("hidden"));
+		assertEquals("", attributes.get("hidden"));
+		// whole names only
+		assertNull(attributes.get("page"));
+		assertTrue(attributes.isEmptyElement());
+
+		// reused for the next element
+		assertTrue(attributes.parse(xml, attributes.end()));
+		assertEquals("C", attributes.get("title"));
+		assertFalse(attributes.has("ns"));
+		assertFalse(attributes.parse(xml, xml.indexOf("</api>")));
+	}
+
+	@Test
+	public void testParseAttributes() {
+		XmlAttributes attributes = new XmlAttributes();
+		attributes.parseAttributes("logid=\"1\" type=\"move\"><params /></item>", 0);
+		assertEquals("1", attributes.get("logid"));
+		assertEquals("move", attributes.get("type"));
+		assertEquals("logid=\"1\" type=\"move\">".length(), attributes.end());
+	}
+
+	/** Same result as the replace chain used before */
+	@Test
+	public void testDecode() {
+		String html = "&lt;a href=&quot;x&quot;&gt;&#039;&amp;amp;&#039;&lt;/a&gt;";
+		assertEquals("<a href=\"x\">'&amp;'</a>", XmlAttributes.decode(html,
+				0, html.length()));
+		String[] pieces = { "&", "amp;", "lt;", "gt;", "quot;", "#039;", "&amp;",
+				"&lt;", "a", ";", "#" };
+		Random random = new Random(42);
+		for (int n = 0; n < 10000; n++) {
+			StringBuilder in = new StringBuilder();
+			for (int k = random.nextInt(8); k > 0; k--) {
+				in.append(pieces[random.nextInt(pieces.length)]);
+			}
+			String s = in.toString();
+			String expected = s.replace("&lt;", "<").replace("&gt;", ">")
+					.replace("&quot;", "\"").replace("&#039;", "'")
+					.replace("&amp;", "&");
+			assertEquals(s, expected, XmlAttributes.decode(s, 0, s.length()));
+		}
+	}
+}